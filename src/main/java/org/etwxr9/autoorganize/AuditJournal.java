@@ -0,0 +1,393 @@
+package org.etwxr9.autoorganize;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * 内置审计日志 - 没有CoreProtect时记录整理对容器造成的数量变化
+ * 每个世界一个只追加的二进制文件，每条记录固定 {@link #RECORD_SIZE} 字节：
+ * 时间戳(8) 玩家UUID(16) 打包的容器坐标(8) 物品编号(4) 数量变化(4)
+ * 物品编号对应的物品保存在共用的物品字典文件中
+ * 记录先在主线程中写入每个世界的缓冲区，缓冲区写满或每隔 {@link #FLUSH_TICKS} tick 整块交给写线程，
+ * 写线程保持日志和字典文件打开；所有文件读写都在单独的线程中进行
+ */
+public class AuditJournal implements AuditLogger {
+
+    public static final int RECORD_SIZE = 40;
+    // 查询时每次读取的记录数
+    private static final int READ_BATCH = 1024;
+    // 每个世界的写入缓冲区大小，写满时立即交给写线程
+    private static final int BUFFER_SIZE = 1024 * RECORD_SIZE;
+    // 定时交给写线程的间隔（tick）
+    private static final long FLUSH_TICKS = 20;
+
+    private final AutoOrganize plugin;
+    private final File directory;
+    private final File dictionaryFile;
+    private final ExecutorService executor;
+
+    // 物品字典（主线程）：键表编号 -> 字典编号，字典编号 -> 显示名称
+    private final ItemKeyTable dictionary = new ItemKeyTable();
+    private final Map<Integer, Integer> journalIds = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    // 主线程中的写入缓冲：世界名 -> 尚未交给写线程的记录，以及新的字典条目
+    private final Map<String, ByteBuffer> pending = new HashMap<>();
+    private final List<ByteBuffer> pendingDictionary = new ArrayList<>();
+    private final BukkitTask flushTask;
+
+    // 每个世界的日志文件通道和字典文件通道（只在写线程中访问）
+    private final Map<String, FileChannel> channels = new HashMap<>();
+    private FileChannel dictionaryChannel;
+
+    public AuditJournal(AutoOrganize plugin) {
+        this.plugin = plugin;
+        this.directory = new File(plugin.getDataFolder(), "audit");
+        this.dictionaryFile = new File(directory, "items.dict");
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "AutoOrganize-Audit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        directory.mkdirs();
+        loadDictionary();
+        this.flushTask = plugin.getServer().getScheduler().runTaskTimer(plugin, this::flush, FLUSH_TICKS, FLUSH_TICKS);
+    }
+
+    @Override
+    public boolean beforeWrite(Inventory inventory, String user) {
+        return true;
+    }
+
+    @Override
+    public void afterWrite(Location location, UUID playerId, ItemKeyTable keys, List<ItemGroup> changes) {
+        if (changes.isEmpty() || location.getWorld() == null) {
+            return;
+        }
+        long timestamp = System.currentTimeMillis();
+        long pos = packPosition(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+
+        // 同一容器中同种物品的变化合并为一条记录
+        Map<Integer, Integer> deltas = new LinkedHashMap<>();
+        for (ItemGroup change : changes) {
+            deltas.merge(change.getKeyId(), change.getAmount(), Integer::sum);
+        }
+
+        // 在主线程中编码到世界的缓冲区，写线程只负责写文件
+        String worldName = location.getWorld().getName();
+        for (Map.Entry<Integer, Integer> delta : deltas.entrySet()) {
+            int itemId = journalId(keys.getPrototype(delta.getKey()));
+            ByteBuffer buffer = pending.computeIfAbsent(worldName, k -> ByteBuffer.allocate(BUFFER_SIZE));
+            if (buffer.remaining() < RECORD_SIZE) {
+                flush(worldName);
+                buffer = pending.computeIfAbsent(worldName, k -> ByteBuffer.allocate(BUFFER_SIZE));
+            }
+            buffer.putLong(timestamp);
+            buffer.putLong(playerId.getMostSignificantBits());
+            buffer.putLong(playerId.getLeastSignificantBits());
+            buffer.putLong(pos);
+            buffer.putInt(itemId);
+            buffer.putInt(delta.getValue());
+        }
+    }
+
+    /**
+     * 将所有缓冲的记录和字典条目交给写线程（定时调用，查询和关闭前也会调用）
+     */
+    public void flush() {
+        flushDictionary();
+        for (String worldName : new ArrayList<>(pending.keySet())) {
+            flush(worldName);
+        }
+    }
+
+    /**
+     * 将一个世界缓冲的记录整块交给写线程，之后的记录写入新的缓冲区
+     */
+    private void flush(String worldName) {
+        // 记录引用的字典条目先写入
+        flushDictionary();
+        ByteBuffer buffer = pending.remove(worldName);
+        if (buffer == null || buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        executor.execute(() -> {
+            try {
+                FileChannel channel = channel(worldName);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "写入审计日志失败", e);
+            }
+        });
+    }
+
+    private void flushDictionary() {
+        if (pendingDictionary.isEmpty()) {
+            return;
+        }
+        ByteBuffer[] entries = pendingDictionary.toArray(new ByteBuffer[0]);
+        pendingDictionary.clear();
+        executor.execute(() -> {
+            try {
+                if (dictionaryChannel == null) {
+                    dictionaryChannel = FileChannel.open(dictionaryFile.toPath(), StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                }
+                for (ByteBuffer entry : entries) {
+                    while (entry.hasRemaining()) {
+                        dictionaryChannel.write(entry);
+                    }
+                }
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "写入审计物品字典失败", e);
+            }
+        });
+    }
+
+    /**
+     * 在写线程中查询一个世界的日志，结果回到主线程交给 callback
+     * 日志按固定大小分批读取，只保留最近 limit 条匹配的记录，不会整体载入内存
+     *
+     * @param world    世界
+     * @param pos      要匹配的容器坐标（{@link #packPosition}），为null时不按坐标过滤
+     * @param playerId 要匹配的玩家，为null时不按玩家过滤
+     * @param limit    最多返回的记录数（最近的）
+     * @param callback 在主线程中接收结果（按时间顺序）
+     */
+    public void query(World world, Long pos, UUID playerId, int limit, Consumer<List<Record>> callback) {
+        // 先写出缓冲的记录，查询在同一个写线程中排在其后
+        flush(world.getName());
+        File file = journalFile(world.getName());
+        executor.execute(() -> {
+            Deque<Record> matches = new ArrayDeque<>();
+            if (file.exists()) {
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                    ByteBuffer buffer = ByteBuffer.allocate(READ_BATCH * RECORD_SIZE);
+                    while (channel.read(buffer) > 0 || buffer.position() > 0) {
+                        buffer.flip();
+                        if (buffer.remaining() < RECORD_SIZE) {
+                            // 文件末尾不完整的记录（例如崩溃时写了一半）
+                            break;
+                        }
+                        while (buffer.remaining() >= RECORD_SIZE) {
+                            Record record = Record.read(buffer);
+                            if ((pos == null || record.pos == pos)
+                                    && (playerId == null || record.playerId.equals(playerId))) {
+                                if (matches.size() >= limit) {
+                                    matches.pollFirst();
+                                }
+                                matches.addLast(record);
+                            }
+                        }
+                        buffer.compact();
+                    }
+                } catch (IOException e) {
+                    plugin.getLogger().log(Level.WARNING, "读取审计日志失败", e);
+                }
+            }
+            List<Record> result = new ArrayList<>(matches);
+            plugin.getServer().getScheduler().runTask(plugin, () -> callback.accept(result));
+        });
+    }
+
+    /**
+     * 获取字典编号对应的物品名称
+     */
+    public String getItemName(int journalId) {
+        return journalId >= 0 && journalId < names.size() ? names.get(journalId) : "#" + journalId;
+    }
+
+    @Override
+    public void close() {
+        flushTask.cancel();
+        flush();
+        executor.execute(() -> {
+            List<FileChannel> open = new ArrayList<>(channels.values());
+            if (dictionaryChannel != null) {
+                open.add(dictionaryChannel);
+            }
+            for (FileChannel channel : open) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    plugin.getLogger().log(Level.WARNING, "关闭审计日志失败", e);
+                }
+            }
+            channels.clear();
+            dictionaryChannel = null;
+        });
+        executor.shutdown();
+        try {
+            // 等待缓冲的记录写完
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 打包容器坐标：x、z 各26位，y 12位
+     */
+    public static long packPosition(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    public static int unpackX(long pos) {
+        return (int) (pos >> 38);
+    }
+
+    public static int unpackY(long pos) {
+        return (int) (pos << 52 >> 52);
+    }
+
+    public static int unpackZ(long pos) {
+        return (int) (pos << 26 >> 38);
+    }
+
+    /**
+     * 获取物品的字典编号，新物品的字典条目加入缓冲，随记录一起写出
+     */
+    private int journalId(ItemStack prototype) {
+        int tableId = dictionary.idOf(prototype);
+        Integer id = journalIds.get(tableId);
+        if (id != null) {
+            return id;
+        }
+        int newId = names.size();
+        String name = prototype.getType().name();
+        journalIds.put(tableId, newId);
+        names.add(name);
+
+        // 字典条目：名称长度(2) 名称 物品数据长度(4) 物品数据
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] data = prototype.serializeAsBytes();
+        ByteBuffer buffer = ByteBuffer.allocate(2 + nameBytes.length + 4 + data.length);
+        buffer.putShort((short) nameBytes.length).put(nameBytes).putInt(data.length).put(data).flip();
+        pendingDictionary.add(buffer);
+        return newId;
+    }
+
+    /**
+     * 启动时载入物品字典，无法解析的物品只保留名称
+     */
+    private void loadDictionary() {
+        if (!dictionaryFile.exists()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(dictionaryFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                // 读满整个文件
+            }
+            buffer.flip();
+            while (buffer.remaining() >= 2) {
+                byte[] nameBytes = new byte[buffer.getShort()];
+                if (buffer.remaining() < nameBytes.length + 4) {
+                    break;
+                }
+                buffer.get(nameBytes);
+                byte[] data = new byte[buffer.getInt()];
+                if (buffer.remaining() < data.length) {
+                    break;
+                }
+                buffer.get(data);
+
+                int id = names.size();
+                names.add(new String(nameBytes, StandardCharsets.UTF_8));
+                try {
+                    journalIds.putIfAbsent(dictionary.idOf(ItemStack.deserializeBytes(data)), id);
+                } catch (RuntimeException e) {
+                    // 物品数据无法解析（例如版本变化），查询时仍可显示名称
+                }
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "载入审计物品字典失败", e);
+        }
+    }
+
+    private File journalFile(String worldName) {
+        return new File(directory, worldName + ".journal");
+    }
+
+    private FileChannel channel(String worldName) throws IOException {
+        FileChannel channel = channels.get(worldName);
+        if (channel == null) {
+            channel = FileChannel.open(journalFile(worldName).toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            channels.put(worldName, channel);
+        }
+        return channel;
+    }
+
+    /**
+     * 一条审计记录
+     */
+    public static class Record {
+        private final long timestamp;
+        private final UUID playerId;
+        private final long pos;
+        private final int itemId;
+        private final int delta;
+
+        private Record(long timestamp, UUID playerId, long pos, int itemId, int delta) {
+            this.timestamp = timestamp;
+            this.playerId = playerId;
+            this.pos = pos;
+            this.itemId = itemId;
+            this.delta = delta;
+        }
+
+        private static Record read(ByteBuffer buffer) {
+            long timestamp = buffer.getLong();
+            UUID playerId = new UUID(buffer.getLong(), buffer.getLong());
+            long pos = buffer.getLong();
+            return new Record(timestamp, playerId, pos, buffer.getInt(), buffer.getInt());
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public UUID getPlayerId() {
+            return playerId;
+        }
+
+        public long getPos() {
+            return pos;
+        }
+
+        public int getItemId() {
+            return itemId;
+        }
+
+        public int getDelta() {
+            return delta;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.etwxr9.autoorganize;
+
+import org.bukkit.Location;
+import org.bukkit.inventory.Inventory;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 审计记录接口 - 整理过程中每个容器写入前后调用
+ * 有CoreProtect时由 {@link CoHook} 实现（写入前记录容器事务），否则由 {@link AuditJournal} 实现（写入后记录数量变化）
+ */
+public interface AuditLogger {
+
+    /**
+     * 写入容器前调用
+     *
+     * @param inventory 目标容器
+     * @param user      执行操作的玩家名
+     * @return 是否允许写入（记录失败时返回false，调用方放弃写入）
+     */
+    boolean beforeWrite(Inventory inventory, String user);
+
+    /**
+     * 写入容器后调用，记录每种物品的数量变化
+     *
+     * @param location 容器位置
+     * @param playerId 执行操作的玩家
+     * @param keys     变化中物品编号所属的物品键表
+     * @param changes  每种物品的数量变化（正数为放入，负数为取出）
+     */
+    void afterWrite(Location location, UUID playerId, ItemKeyTable keys, List<ItemGroup> changes);
+
+    /**
+     * 插件卸载时调用，写完缓冲的记录并释放资源
+     */
+    default void close() {
+    }
+}
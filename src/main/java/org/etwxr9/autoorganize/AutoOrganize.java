@@ -1,8 +1,14 @@
 package org.etwxr9.autoorganize;
 
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import com.mojang.brigadier.Command;
 import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.context.CommandContext;
@@ -22,9 +28,37 @@ public final class AutoOrganize extends JavaPlugin {
 
     // 配置项（从配置文件读取）
     private int blocksPerTick = 300;
+    private String scanMode = "registry";
+    private int scanThreads = 2;
+    private double tickBudgetMs = 5.0;
+    private double minTickBudgetMs = 0.5;
+    private double targetMspt = 40.0;
+    private boolean streamingEnabled = true;
+    private boolean compactionEnabled = false;
+    private double compactionBudgetMs = 0.5;
+    private double compactionMaxMspt = 30.0;
+    private int undoHistorySize = 3;
+    private int defaultMaxRange = 64;
+    private Map<String, Integer> rangePermissions = new LinkedHashMap<>();
+    private OrganizeAdmission.OverLimit admissionOverLimit = OrganizeAdmission.OverLimit.CLAMP;
+    private int admissionMaxChunks = 1024;
+    private double admissionCooldownSeconds = 5.0;
+    private int maxRunningTasks = 4;
+    private int maxQueuedTasks = 32;
+    private OrganizeAlgorithm.Strategy placementStrategy = OrganizeAlgorithm.Strategy.FIRST_FIT;
     private boolean visualEffectsEnabled = true;
     private int flightDuration = 30;
     private double itemScale = 0.3;
+    private int maxFlights = 256;
+    private int maxFlightsPerPlayer = 32;
+    private int maxFlightsPerWorld = 128;
+    private int flightMergeWindow = 5;
+    private int displayPoolSize = 64;
+    private FlightAnimator.Visibility flightVisibility = FlightAnimator.Visibility.NEARBY;
+    private double flightVisibilityRadius = 32.0;
+    private FlightAnimator.Renderer flightRenderer = FlightAnimator.Renderer.AUTO;
+    private double particleRendererMspt = 40.0;
+    private FlightAnimator.Mode flightMode = FlightAnimator.Mode.INTERPOLATE;
 
     // 消息配置
     private String msgGuiTitle = "";
@@ -65,6 +99,57 @@ public final class AutoOrganize extends JavaPlugin {
         return coHook;
     }
 
+    // 审计记录：有CoreProtect时为CoHook，否则为内置审计日志（可关闭）
+    private AuditLogger auditLogger;
+    private boolean auditJournalEnabled = true;
+
+    public AuditLogger getAuditLogger() {
+        return auditLogger;
+    }
+
+    private ContainerRegistry containerRegistry;
+
+    public ContainerRegistry getContainerRegistry() {
+        return containerRegistry;
+    }
+
+    private ExecutorService scanExecutor;
+
+    public ExecutorService getScanExecutor() {
+        return scanExecutor;
+    }
+
+    private ContainerCompactor containerCompactor;
+
+    public ContainerCompactor getContainerCompactor() {
+        return containerCompactor;
+    }
+
+    private UndoHistory undoHistory;
+
+    public UndoHistory getUndoHistory() {
+        return undoHistory;
+    }
+
+    private DisplayPool displayPool;
+    private FlightAnimator flightAnimator;
+
+    public FlightAnimator getFlightAnimator() {
+        return flightAnimator;
+    }
+
+    private OrganizeAdmission organizeAdmission;
+
+    public OrganizeAdmission getOrganizeAdmission() {
+        return organizeAdmission;
+    }
+
+    private OrganizeScheduler organizeScheduler;
+
+    public OrganizeScheduler getOrganizeScheduler() {
+        return organizeScheduler;
+    }
+
     public BlockCombinationConfig getBlockCombinationConfig() {
         return blockCombinationConfig;
     }
@@ -82,6 +167,66 @@ public final class AutoOrganize extends JavaPlugin {
         this.blocksPerTick = blocksPerTick2;
     }
 
+    public String getScanMode() {
+        return scanMode;
+    }
+
+    public double getTickBudgetMs() {
+        return tickBudgetMs;
+    }
+
+    public double getMinTickBudgetMs() {
+        return minTickBudgetMs;
+    }
+
+    public double getTargetMspt() {
+        return targetMspt;
+    }
+
+    public boolean isStreamingEnabled() {
+        return streamingEnabled;
+    }
+
+    public double getCompactionBudgetMs() {
+        return compactionBudgetMs;
+    }
+
+    public double getCompactionMaxMspt() {
+        return compactionMaxMspt;
+    }
+
+    public int getDefaultMaxRange() {
+        return defaultMaxRange;
+    }
+
+    public Map<String, Integer> getRangePermissions() {
+        return rangePermissions;
+    }
+
+    public OrganizeAdmission.OverLimit getAdmissionOverLimit() {
+        return admissionOverLimit;
+    }
+
+    public int getAdmissionMaxChunks() {
+        return admissionMaxChunks;
+    }
+
+    public double getAdmissionCooldownSeconds() {
+        return admissionCooldownSeconds;
+    }
+
+    public int getMaxRunningTasks() {
+        return maxRunningTasks;
+    }
+
+    public int getMaxQueuedTasks() {
+        return maxQueuedTasks;
+    }
+
+    public OrganizeAlgorithm.Strategy getPlacementStrategy() {
+        return placementStrategy;
+    }
+
     public boolean isVisualEffectsEnabled() {
         return visualEffectsEnabled;
     }
@@ -94,6 +239,38 @@ public final class AutoOrganize extends JavaPlugin {
         this.flightDuration = flightDuration2;
     }
 
+    public int getMaxFlightsPerPlayer() {
+        return maxFlightsPerPlayer;
+    }
+
+    public int getMaxFlightsPerWorld() {
+        return maxFlightsPerWorld;
+    }
+
+    public int getFlightMergeWindow() {
+        return flightMergeWindow;
+    }
+
+    public FlightAnimator.Renderer getFlightRenderer() {
+        return flightRenderer;
+    }
+
+    public double getParticleRendererMspt() {
+        return particleRendererMspt;
+    }
+
+    public FlightAnimator.Visibility getFlightVisibility() {
+        return flightVisibility;
+    }
+
+    public double getFlightVisibilityRadius() {
+        return flightVisibilityRadius;
+    }
+
+    public FlightAnimator.Mode getFlightMode() {
+        return flightMode;
+    }
+
     public double getItemScale() {
         return itemScale;
     }
@@ -229,16 +406,80 @@ public final class AutoOrganize extends JavaPlugin {
             getLogger().info("CoreProtect not found. Some features will be disabled.");
         }
 
+        // 选择审计记录方式：优先CoreProtect，否则使用内置审计日志
+        if (isCoEnabled) {
+            this.auditLogger = coHook;
+        } else if (auditJournalEnabled) {
+            this.auditLogger = new AuditJournal(this);
+            getLogger().info("Using built-in audit journal.");
+        }
+
+        // 初始化空闲时的容器碎片整理
+        if (compactionEnabled) {
+            this.containerCompactor = new ContainerCompactor(this);
+            getServer().getPluginManager().registerEvents(containerCompactor, this);
+        }
+
+        // 初始化撤销历史（每个玩家保留的撤销记录数为0时不启用）
+        if (undoHistorySize > 0) {
+            this.undoHistory = new UndoHistory(this, undoHistorySize);
+            getServer().getPluginManager().registerEvents(undoHistory, this);
+        }
+
+        // 启动共用的飞行动画驱动
+        this.displayPool = new DisplayPool(this, displayPoolSize);
+        displayPool.purgeLoaded();
+        getServer().getPluginManager().registerEvents(displayPool, this);
+        this.flightAnimator = new FlightAnimator(this, displayPool, maxFlights);
+        flightAnimator.runTaskTimer(this, 1L, 1L);
+
+        // 整理请求准入控制
+        this.organizeAdmission = new OrganizeAdmission(this);
+
+        // 启动整理任务调度器
+        this.organizeScheduler = new OrganizeScheduler(this);
+        organizeScheduler.runTaskTimer(this, 1L, 1L);
+
         // 初始化GUI管理器
         this.guiManager = new OrganizeGUIManager(this);
 
+        // 初始化容器索引（仅在索引扫描模式下维护）
+        if ("registry".equals(scanMode)) {
+            this.containerRegistry = new ContainerRegistry(this);
+            getServer().getPluginManager().registerEvents(containerRegistry, this);
+        }
+
+        // 初始化快照扫描线程池（仅在快照扫描模式下创建）
+        if ("snapshot".equals(scanMode)) {
+            this.scanExecutor = Executors.newFixedThreadPool(Math.max(1, scanThreads), r -> {
+                Thread thread = new Thread(r, "AutoOrganize-Scan");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
         // 注册展示框交互监听器
         getServer().getPluginManager().registerEvents(new ItemFrameInteractionListener(this), this);
 
         // 注册命令
         var organizeCmd = Commands.literal("organize")
+                // 撤销：取回最近一次整理放入容器的物品
+                .then(Commands.literal("undo")
+                        .executes(ctx -> {
+                            runUndoCmd(ctx);
+                            return Command.SINGLE_SUCCESS;
+                        }))
+                // 预览：用背包物品的副本模拟整理，只汇报结果不修改容器
+                .then(Commands.literal("preview")
+                        .requires(source -> source.getSender().hasPermission("autoorganize.preview"))
+                        .then(Commands.argument("loc", ArgumentTypes.blockPosition())
+                                .then(Commands.argument("range", IntegerArgumentType.integer(1))
+                                        .executes(ctx -> {
+                                            runPreviewCmd(ctx);
+                                            return Command.SINGLE_SUCCESS;
+                                        }))))
                 .then(Commands.argument("loc", ArgumentTypes.blockPosition())
-                        .then(Commands.argument("range", IntegerArgumentType.integer())
+                        .then(Commands.argument("range", IntegerArgumentType.integer(1))
                                 .executes(ctx -> {
                                     runCmd(ctx);
                                     return Command.SINGLE_SUCCESS;
@@ -274,12 +515,78 @@ public final class AutoOrganize extends JavaPlugin {
 
         Player player = (Player) ctx.getSource().getSender();
 
+        // 准入检查：范围上限和冷却
+        int allowedRange = organizeAdmission.admitRange(player, blockPosition.toLocation(player.getWorld()), range);
+        if (allowedRange < 0 || !organizeAdmission.checkCooldown(player)) {
+            return false;
+        }
+
         // 打开整理GUI界面
-        guiManager.openOrganizeGUI(player, blockPosition, range);
+        guiManager.openOrganizeGUI(player, blockPosition, allowedRange);
 
         return true;
     }
 
+    private boolean runPreviewCmd(CommandContext<CommandSourceStack> ctx) {
+        final BlockPositionResolver blockPositionResolver = ctx.getArgument("loc", BlockPositionResolver.class);
+        BlockPosition blockPosition;
+        try {
+            blockPosition = blockPositionResolver.resolve(ctx.getSource());
+        } catch (CommandSyntaxException e) {
+            e.printStackTrace();
+            return false;
+        }
+        final int range = ctx.getArgument("range", int.class);
+        // 检查命令发送者是否为玩家
+        if (!(ctx.getSource().getSender() instanceof Player)) {
+            if (!msgPlayerOnly.trim().isEmpty()) {
+                ctx.getSource().getSender().sendMessage(msgPlayerOnly);
+            }
+            return false;
+        }
+
+        Player player = (Player) ctx.getSource().getSender();
+
+        // 预览与正式整理使用相同的准入检查
+        int allowedRange = organizeAdmission.admitRange(player, blockPosition.toLocation(player.getWorld()), range);
+        if (allowedRange < 0 || !organizeAdmission.checkCooldown(player)) {
+            return false;
+        }
+
+        // 以背包物品的副本作为输入，走与正式整理相同的扫描和放置流程，但不写入容器
+        OrganizeTask previewTask = new OrganizeTask(this, player, blockPosition, allowedRange,
+                player.getInventory().getStorageContents(), true);
+        player.sendMessage("§e正在预览整理结果，范围 §7" + allowedRange + " §e格...");
+        organizeAdmission.submit(player, previewTask);
+
+        return true;
+    }
+
+    private boolean runUndoCmd(CommandContext<CommandSourceStack> ctx) {
+        if (!(ctx.getSource().getSender() instanceof Player)) {
+            if (!msgPlayerOnly.trim().isEmpty()) {
+                ctx.getSource().getSender().sendMessage(msgPlayerOnly);
+            }
+            return false;
+        }
+
+        Player player = (Player) ctx.getSource().getSender();
+        if (undoHistory == null) {
+            player.sendMessage("§c撤销功能未启用");
+            return false;
+        }
+        UndoRecord record = undoHistory.poll(player);
+        if (record == null) {
+            player.sendMessage("§c没有可以撤销的整理");
+            return false;
+        }
+
+        // 与整理任务共用运行数上限和队列，共享每tick时间预算
+        player.sendMessage("§e正在撤销上次整理...");
+        organizeAdmission.submitUndo(player, new UndoTask(this, player, record));
+        return true;
+    }
+
     /**
      * 加载配置文件
      */
@@ -292,9 +599,49 @@ public final class AutoOrganize extends JavaPlugin {
 
         // 读取配置项
         blocksPerTick = getConfig().getInt("performance.blocks_per_tick", 300);
+        scanMode = getConfig().getString("performance.scan_mode", "registry").toLowerCase();
+        scanThreads = getConfig().getInt("performance.scan_threads", 2);
+        tickBudgetMs = getConfig().getDouble("performance.tick_budget_ms", 5.0);
+        minTickBudgetMs = getConfig().getDouble("performance.min_tick_budget_ms", 0.5);
+        targetMspt = getConfig().getDouble("performance.target_mspt", 40.0);
+        streamingEnabled = getConfig().getBoolean("performance.streaming", true);
+        auditJournalEnabled = getConfig().getBoolean("audit.journal", true);
+        compactionEnabled = getConfig().getBoolean("compaction.enabled", false);
+        compactionBudgetMs = getConfig().getDouble("compaction.budget_ms", 0.5);
+        compactionMaxMspt = getConfig().getDouble("compaction.max_mspt", 30.0);
+        undoHistorySize = getConfig().getInt("undo.history", 3);
+        defaultMaxRange = getConfig().getInt("admission.max_range", 64);
+        rangePermissions = new LinkedHashMap<>();
+        ConfigurationSection rangeSection = getConfig().getConfigurationSection("admission.range_permissions");
+        if (rangeSection != null) {
+            for (String permission : rangeSection.getKeys(false)) {
+                rangePermissions.put(permission, rangeSection.getInt(permission));
+            }
+        }
+        admissionOverLimit = OrganizeAdmission.OverLimit.fromName(getConfig().getString("admission.over_limit"),
+                OrganizeAdmission.OverLimit.CLAMP);
+        admissionMaxChunks = getConfig().getInt("admission.max_chunks", 1024);
+        admissionCooldownSeconds = getConfig().getDouble("admission.cooldown_seconds", 5.0);
+        maxRunningTasks = Math.max(1, getConfig().getInt("admission.max_running_tasks", 4));
+        maxQueuedTasks = getConfig().getInt("admission.max_queued_tasks", 32);
+        placementStrategy = OrganizeAlgorithm.Strategy.fromName(getConfig().getString("placement.strategy"),
+                OrganizeAlgorithm.Strategy.FIRST_FIT);
         visualEffectsEnabled = getConfig().getBoolean("visual_effects.enabled", true);
         flightDuration = getConfig().getInt("visual_effects.flight_duration", 30);
         itemScale = getConfig().getDouble("visual_effects.item_scale", 0.3);
+        maxFlights = getConfig().getInt("visual_effects.max_flights", 256);
+        maxFlightsPerPlayer = getConfig().getInt("visual_effects.max_flights_per_player", 32);
+        maxFlightsPerWorld = getConfig().getInt("visual_effects.max_flights_per_world", 128);
+        flightMergeWindow = getConfig().getInt("visual_effects.merge_window", 5);
+        displayPoolSize = getConfig().getInt("visual_effects.pool_size", 64);
+        flightVisibility = FlightAnimator.Visibility.fromName(getConfig().getString("visual_effects.visibility"),
+                FlightAnimator.Visibility.NEARBY);
+        flightVisibilityRadius = getConfig().getDouble("visual_effects.visibility_radius", 32.0);
+        flightRenderer = FlightAnimator.Renderer.fromName(getConfig().getString("visual_effects.renderer"),
+                FlightAnimator.Renderer.AUTO);
+        particleRendererMspt = getConfig().getDouble("visual_effects.particle_mspt", 40.0);
+        flightMode = FlightAnimator.Mode.fromName(getConfig().getString("visual_effects.flight_mode"),
+                FlightAnimator.Mode.INTERPOLATE);
 
         // 读取消息配置
         msgGuiTitle = getConfig().getString("messages.gui_title", "");
@@ -317,12 +664,36 @@ public final class AutoOrganize extends JavaPlugin {
         this.blockCombinationConfig = new BlockCombinationConfig();
         this.blockCombinationConfig.loadFromConfig(getConfig().getConfigurationSection("block_combination"));
 
-        getLogger().info("配置已加载 - 每tick扫描方块数: " + blocksPerTick);
+        getLogger().info("配置已加载 - 每tick扫描工作量上限: " + blocksPerTick + ", 扫描模式: " + scanMode
+                + ", 每tick时间预算: " + tickBudgetMs + "ms, 放置策略: " + placementStrategy);
     }
 
     @Override
     public void onDisable() {
         // Plugin shutdown logic
+        if (organizeScheduler != null) {
+            organizeScheduler.shutdown();
+        }
+        if (organizeAdmission != null) {
+            organizeAdmission.clear();
+        }
+        if (scanExecutor != null) {
+            scanExecutor.shutdownNow();
+        }
+        if (flightAnimator != null) {
+            flightAnimator.cancel();
+            flightAnimator.clear();
+            displayPool.clear();
+        }
+        if (containerCompactor != null) {
+            containerCompactor.clear();
+        }
+        if (undoHistory != null) {
+            undoHistory.clear();
+        }
+        if (auditLogger != null) {
+            auditLogger.close();
+        }
         getLogger().info("AutoOrganize has been disabled!");
     }
 
@@ -1,16 +1,27 @@
 package org.etwxr9.autoorganize;
 
+import org.bukkit.Bukkit;
 import org.bukkit.Material;
+import org.bukkit.OfflinePlayer;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 
 import com.mojang.brigadier.Command;
 import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.context.CommandContext;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
 
 import io.papermc.paper.command.brigadier.CommandSourceStack;
 import io.papermc.paper.command.brigadier.Commands;
 import io.papermc.paper.command.brigadier.argument.ArgumentTypes;
+import io.papermc.paper.command.brigadier.argument.resolvers.BlockPositionResolver;
+import io.papermc.paper.math.BlockPosition;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
 
 /**
  * 方块组合体管理指令类
@@ -18,6 +29,9 @@ import io.papermc.paper.command.brigadier.argument.ArgumentTypes;
  */
 public class BlockCombinationCommand {
     
+    // 审计查询最多显示的记录数
+    private static final int AUDIT_QUERY_LIMIT = 10;
+
     private final AutoOrganize plugin;
     
     public BlockCombinationCommand(AutoOrganize plugin) {
@@ -41,7 +55,9 @@ public class BlockCombinationCommand {
                 // 删除下方方块配置
                 .then(Commands.literal("removeblock")
                         .executes(handler::removeBottomBlock))
-                // 设置每tick检索方块数量
+                // 设置主手方块（下方方块）对应工作站的容器访问顺序
+                .then(orderCommand(handler))
+                // 设置每个任务每tick检索工作量上限
                 .then(Commands.literal("setblockspeed")
                         .then(Commands.argument("blocks_per_tick", IntegerArgumentType.integer(1))
                                 .executes(handler::setBlocksPerTick)))
@@ -56,9 +72,31 @@ public class BlockCombinationCommand {
                 // 列出当前配置
                 .then(Commands.literal("list")
                         .executes(handler::listConfig))
+                // 查询内置审计日志
+                .then(Commands.literal("audit")
+                        .requires(source -> source.getSender().hasPermission("autoorganize.audit"))
+                        .then(Commands.literal("pos")
+                                .then(Commands.argument("loc", ArgumentTypes.blockPosition())
+                                        .executes(handler::auditPosition)))
+                        .then(Commands.literal("player")
+                                .then(Commands.argument("name", StringArgumentType.word())
+                                        .executes(handler::auditPlayer))))
                 .build();
     }
     
+    /**
+     * 构建 setorder 子指令，每种访问顺序一个子节点
+     */
+    private static com.mojang.brigadier.builder.LiteralArgumentBuilder<CommandSourceStack> orderCommand(
+            BlockCombinationCommand handler) {
+        var setOrder = Commands.literal("setorder");
+        for (ContainerOrder order : ContainerOrder.values()) {
+            setOrder.then(Commands.literal(order.name().toLowerCase())
+                    .executes(ctx -> handler.setContainerOrder(ctx, order)));
+        }
+        return setOrder;
+    }
+
     /**
      * 设置上方方块为主手方块
      */
@@ -169,7 +207,40 @@ public class BlockCombinationCommand {
     }
     
     /**
-     * 设置每tick检索方块数量
+     * 设置主手方块（下方方块）对应工作站的容器访问顺序
+     */
+    private int setContainerOrder(CommandContext<CommandSourceStack> ctx, ContainerOrder order) {
+        if (!(ctx.getSource().getSender() instanceof Player)) {
+            ctx.getSource().getSender().sendMessage("§c此命令只能由玩家执行");
+            return 0;
+        }
+
+        Player player = (Player) ctx.getSource().getSender();
+        ItemStack mainHandItem = player.getInventory().getItemInMainHand();
+
+        if (mainHandItem == null || mainHandItem.getType() == Material.AIR) {
+            player.sendMessage("§c请在主手持有一个方块");
+            return 0;
+        }
+
+        Material blockType = mainHandItem.getType();
+        if (!plugin.getBlockCombinationConfig().containsBottomBlock(blockType)) {
+            player.sendMessage("§c该方块未在配置中: §e" + blockType.name());
+            return 0;
+        }
+
+        // 更新配置
+        plugin.getBlockCombinationConfig().setContainerOrder(blockType, order);
+
+        // 保存到配置文件
+        saveConfig();
+
+        player.sendMessage("§a已设置 §e" + blockType.name() + " §a的容器访问顺序为: §e" + order.name().toLowerCase());
+        return Command.SINGLE_SUCCESS;
+    }
+
+    /**
+     * 设置每个任务每tick检索工作量上限（实际工作量还受调度器时间预算限制）
      */
     private int setBlocksPerTick(CommandContext<CommandSourceStack> ctx) {
         if (!(ctx.getSource().getSender() instanceof Player)) {
@@ -188,7 +259,7 @@ public class BlockCombinationCommand {
         // 更新内存中的配置
         plugin.setBlocksPerTick(blocksPerTick);
 
-        player.sendMessage("§a已设置每tick检索方块数量为: §e" + blocksPerTick);
+        player.sendMessage("§a已设置每tick检索工作量上限为: §e" + blocksPerTick);
         return Command.SINGLE_SUCCESS;
     }
 
@@ -253,7 +324,11 @@ public class BlockCombinationCommand {
         player.sendMessage("§6=== 方块组合体配置 ===");
         player.sendMessage("§a上方方块: §e" + config.getTopBlock().name());
         player.sendMessage("§aY轴搜索半径: §e" + config.getYRadius());
-        player.sendMessage("§a每tick检索方块数: §e" + plugin.getBlocksPerTick());
+        player.sendMessage("§a每tick检索工作量上限: §e" + plugin.getBlocksPerTick());
+        player.sendMessage("§a当前每tick时间预算: §e" + String.format("%.2f", plugin.getOrganizeScheduler().getBudgetMs())
+                + "ms §a(上限 §e" + plugin.getTickBudgetMs() + "ms§a, 运行中任务 §e"
+                + plugin.getOrganizeScheduler().getRunningCount() + "§a)");
+        player.sendMessage("§a放置策略: §e" + plugin.getPlacementStrategy().name().toLowerCase());
         player.sendMessage("§a飞行动画时间: §e" + plugin.getFlightDuration() + " tick");
         player.sendMessage("§a下方方块配置:");
         
@@ -262,13 +337,111 @@ public class BlockCombinationCommand {
         } else {
             for (Material material : config.getBottomBlocks()) {
                 Integer range = config.getRange(material);
-                player.sendMessage("  §e" + material.name() + " §a-> 范围: §e" + range);
+                player.sendMessage("  §e" + material.name() + " §a-> 范围: §e" + range + " §a访问顺序: §e"
+                        + config.getContainerOrder(material).name().toLowerCase());
             }
         }
         
         return Command.SINGLE_SUCCESS;
     }
     
+    /**
+     * 查询某个容器的审计记录
+     */
+    private int auditPosition(CommandContext<CommandSourceStack> ctx) {
+        AuditJournal journal = getAuditJournal(ctx);
+        if (journal == null) {
+            return 0;
+        }
+        Player player = (Player) ctx.getSource().getSender();
+        BlockPosition position;
+        try {
+            position = ctx.getArgument("loc", BlockPositionResolver.class).resolve(ctx.getSource());
+        } catch (CommandSyntaxException e) {
+            player.sendMessage("§c无效的坐标");
+            return 0;
+        }
+
+        long pos = AuditJournal.packPosition(position.blockX(), position.blockY(), position.blockZ());
+        player.sendMessage("§a正在查询容器 §e(" + position.blockX() + ", " + position.blockY() + ", "
+                + position.blockZ() + ") §a的审计记录...");
+        journal.query(player.getWorld(), pos, null, AUDIT_QUERY_LIMIT,
+                records -> sendAuditRecords(player, journal, records));
+        return Command.SINGLE_SUCCESS;
+    }
+
+    /**
+     * 查询某个玩家在当前世界的审计记录
+     */
+    private int auditPlayer(CommandContext<CommandSourceStack> ctx) {
+        AuditJournal journal = getAuditJournal(ctx);
+        if (journal == null) {
+            return 0;
+        }
+        Player player = (Player) ctx.getSource().getSender();
+        String name = StringArgumentType.getString(ctx, "name");
+        OfflinePlayer target = Bukkit.getOfflinePlayerIfCached(name);
+        if (target == null) {
+            player.sendMessage("§c找不到玩家: §e" + name);
+            return 0;
+        }
+
+        player.sendMessage("§a正在查询玩家 §e" + target.getName() + " §a的审计记录...");
+        journal.query(player.getWorld(), null, target.getUniqueId(), AUDIT_QUERY_LIMIT,
+                records -> sendAuditRecords(player, journal, records));
+        return Command.SINGLE_SUCCESS;
+    }
+
+    /**
+     * 检查发送者并获取内置审计日志，使用CoreProtect或未启用时返回null
+     */
+    private AuditJournal getAuditJournal(CommandContext<CommandSourceStack> ctx) {
+        if (!(ctx.getSource().getSender() instanceof Player)) {
+            ctx.getSource().getSender().sendMessage("§c此命令只能由玩家执行");
+            return null;
+        }
+        Player player = (Player) ctx.getSource().getSender();
+        AuditLogger audit = plugin.getAuditLogger();
+        if (audit instanceof AuditJournal) {
+            return (AuditJournal) audit;
+        }
+        if (plugin.isCoEnabled()) {
+            player.sendMessage("§c当前使用CoreProtect记录，请使用 /co lookup 查询");
+        } else {
+            player.sendMessage("§c内置审计日志未启用");
+        }
+        return null;
+    }
+
+    /**
+     * 发送查询结果（按时间顺序）
+     */
+    private void sendAuditRecords(Player player, AuditJournal journal, List<AuditJournal.Record> records) {
+        if (!player.isOnline()) {
+            return;
+        }
+        if (records.isEmpty()) {
+            player.sendMessage("§c没有找到审计记录");
+            return;
+        }
+        SimpleDateFormat format = new SimpleDateFormat("MM-dd HH:mm:ss");
+        player.sendMessage("§6=== 审计记录（最近 " + records.size() + " 条） ===");
+        for (AuditJournal.Record record : records) {
+            String playerName = playerName(record.getPlayerId());
+            long pos = record.getPos();
+            int delta = record.getDelta();
+            player.sendMessage("§7" + format.format(new Date(record.getTimestamp())) + " §e" + playerName
+                    + " §7(" + AuditJournal.unpackX(pos) + ", " + AuditJournal.unpackY(pos) + ", "
+                    + AuditJournal.unpackZ(pos) + ") " + (delta >= 0 ? "§a+" : "§c") + delta + " §e"
+                    + journal.getItemName(record.getItemId()));
+        }
+    }
+
+    private static String playerName(UUID playerId) {
+        String name = Bukkit.getOfflinePlayer(playerId).getName();
+        return name != null ? name : playerId.toString();
+    }
+
     /**
      * 保存配置到文件
      */
@@ -15,11 +15,16 @@ public class BlockCombinationConfig {
     private Material topBlock;
     private Map<Material, Integer> bottomBlockRanges;
     private int yRadius;
+    // 容器访问顺序：默认值，以及按下方方块单独配置的值
+    private ContainerOrder defaultContainerOrder;
+    private Map<Material, ContainerOrder> containerOrders;
 
     public BlockCombinationConfig() {
         this.topBlock = Material.LODESTONE; // 默认上方方块为磁石
         this.bottomBlockRanges = new HashMap<>();
         this.yRadius = 5; // 默认Y轴半径为5
+        this.defaultContainerOrder = ContainerOrder.NEAREST; // 默认最近的容器优先
+        this.containerOrders = new HashMap<>();
         
         // 设置默认的下方方块配置
         this.bottomBlockRanges.put(Material.DIAMOND_BLOCK, 50);
@@ -62,6 +67,23 @@ public class BlockCombinationConfig {
                 }
             }
         }
+
+        // 加载容器访问顺序
+        this.defaultContainerOrder = ContainerOrder.fromName(config.getString("container_order"),
+                ContainerOrder.NEAREST);
+        ConfigurationSection ordersSection = config.getConfigurationSection("container_orders");
+        this.containerOrders.clear();
+        if (ordersSection != null) {
+            for (String blockName : ordersSection.getKeys(false)) {
+                try {
+                    Material material = Material.valueOf(blockName.toUpperCase());
+                    this.containerOrders.put(material,
+                            ContainerOrder.fromName(ordersSection.getString(blockName), defaultContainerOrder));
+                } catch (IllegalArgumentException e) {
+                    // 忽略无效的方块类型
+                }
+            }
+        }
     }
     
     /**
@@ -83,6 +105,13 @@ public class BlockCombinationConfig {
         for (Map.Entry<Material, Integer> entry : bottomBlockRanges.entrySet()) {
             bottomBlocksSection.set(entry.getKey().name(), entry.getValue());
         }
+
+        // 保存容器访问顺序
+        config.set("container_order", defaultContainerOrder.name().toLowerCase());
+        ConfigurationSection ordersSection = config.createSection("container_orders");
+        for (Map.Entry<Material, ContainerOrder> entry : containerOrders.entrySet()) {
+            ordersSection.set(entry.getKey().name(), entry.getValue().name().toLowerCase());
+        }
     }
     
     /**
@@ -113,6 +142,27 @@ public class BlockCombinationConfig {
         this.yRadius = Math.max(1, yRadius); // 确保至少为1
     }
     
+    /**
+     * 获取指定下方方块（工作站）的容器访问顺序，未单独配置时返回默认值
+     */
+    public ContainerOrder getContainerOrder(Material bottomBlock) {
+        return containerOrders.getOrDefault(bottomBlock, defaultContainerOrder);
+    }
+
+    /**
+     * 设置指定下方方块（工作站）的容器访问顺序
+     */
+    public void setContainerOrder(Material bottomBlock, ContainerOrder order) {
+        containerOrders.put(bottomBlock, order);
+    }
+
+    /**
+     * 获取默认容器访问顺序
+     */
+    public ContainerOrder getDefaultContainerOrder() {
+        return defaultContainerOrder;
+    }
+
     /**
      * 获取下方方块类型及其范围的映射
      */
@@ -138,6 +188,7 @@ public class BlockCombinationConfig {
      * 移除下方方块配置
      */
     public boolean removeBottomBlock(Material bottomBlock) {
+        containerOrders.remove(bottomBlock);
         return bottomBlockRanges.remove(bottomBlock) != null;
     }
     
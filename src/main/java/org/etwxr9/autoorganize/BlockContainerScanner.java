@@ -0,0 +1,76 @@
+package org.etwxr9.autoorganize;
+
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.inventory.InventoryHolder;
+
+import java.util.List;
+
+/**
+ * 逐方块扫描器 - 按 X→Y→Z 顺序检查范围内的每一个方块
+ * 工作量单位为方块数，适合范围很小或需要兼容旧行为的场景
+ */
+public class BlockContainerScanner implements ContainerScanner {
+
+    private final ScanBox box;
+    private int scanX, scanY, scanZ;
+
+    public BlockContainerScanner(ScanBox box) {
+        this.box = box;
+        this.scanX = box.getMinX();
+        this.scanY = box.getMinY();
+        this.scanZ = box.getMinZ();
+    }
+
+    @Override
+    public int scan(int budget, List<OrganizeAlgorithm.ContainerInfo> found) {
+        int scannedBlocks = 0;
+        while (scannedBlocks < budget && !isDone()) {
+            scanCurrentBlock(found);
+            moveToNextBlock();
+            scannedBlocks++;
+        }
+        return scannedBlocks;
+    }
+
+    @Override
+    public boolean isDone() {
+        return scanX > box.getMaxX();
+    }
+
+    @Override
+    public long estimateWork() {
+        return box.getVolume();
+    }
+
+    /**
+     * 扫描当前方块
+     */
+    private void scanCurrentBlock(List<OrganizeAlgorithm.ContainerInfo> found) {
+        Block block = box.getWorld().getBlockAt(scanX, scanY, scanZ);
+
+        // 检查是否为容器方块
+        if (OrganizeAlgorithm.isContainerBlock(block.getType())) {
+            BlockState state = block.getState();
+            if (state instanceof InventoryHolder) {
+                InventoryHolder holder = (InventoryHolder) state;
+                found.add(new OrganizeAlgorithm.ContainerInfo(block.getLocation(), holder.getInventory()));
+            }
+        }
+    }
+
+    /**
+     * 移动到下一个方块
+     */
+    private void moveToNextBlock() {
+        scanZ++;
+        if (scanZ > box.getMaxZ()) {
+            scanZ = box.getMinZ();
+            scanY++;
+            if (scanY > box.getMaxY()) {
+                scanY = box.getMinY();
+                scanX++;
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.etwxr9.autoorganize;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * 区块游标 - 由近及远遍历与扫描范围相交的所有区块
+ * 以范围中心所在区块为起点，按一圈一圈向外扩展的顺序访问，同一圈内距离近的优先
+ */
+public class ChunkCursor {
+
+    private final int[] chunkXs;
+    private final int[] chunkZs;
+    private int index = 0;
+
+    public ChunkCursor(ScanBox box) {
+        int centerX = box.getCenterX() >> 4;
+        int centerZ = box.getCenterZ() >> 4;
+        int spanZ = box.getMaxChunkZ() - box.getMinChunkZ() + 1;
+        int count = box.getChunkCount();
+
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        // 按 (圈数, 距离平方) 排序
+        Arrays.sort(order, Comparator
+                .comparingInt((Integer i) -> Math.max(Math.abs(box.getMinChunkX() + i / spanZ - centerX),
+                        Math.abs(box.getMinChunkZ() + i % spanZ - centerZ)))
+                .thenComparingLong(i -> {
+                    long dx = box.getMinChunkX() + i / spanZ - centerX;
+                    long dz = box.getMinChunkZ() + i % spanZ - centerZ;
+                    return dx * dx + dz * dz;
+                }));
+
+        this.chunkXs = new int[count];
+        this.chunkZs = new int[count];
+        for (int i = 0; i < count; i++) {
+            chunkXs[i] = box.getMinChunkX() + order[i] / spanZ;
+            chunkZs[i] = box.getMinChunkZ() + order[i] % spanZ;
+        }
+    }
+
+    public boolean isDone() {
+        return index >= chunkXs.length;
+    }
+
+    public int getX() {
+        return chunkXs[index];
+    }
+
+    public int getZ() {
+        return chunkZs[index];
+    }
+
+    /**
+     * 移动到下一个区块
+     */
+    public void advance() {
+        index++;
+    }
+}
@@ -1,15 +1,19 @@
 package org.etwxr9.autoorganize;
 
 import org.bukkit.Bukkit;
+import org.bukkit.Location;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.plugin.Plugin;
 
+import java.util.List;
+import java.util.UUID;
+
 import net.coreprotect.CoreProtect;
 import net.coreprotect.CoreProtectAPI;
 
-public class CoHook {
+public class CoHook implements AuditLogger {
 
     private CoreProtectAPI coreProtect;
 
@@ -82,7 +86,27 @@ public class CoHook {
      * @return 是否成功记录
      */
     public boolean logContainerAccess(Inventory inventory, Player player) {
-        return coreProtect.logContainerTransaction(player.getName(), inventory.getLocation());
+        return logContainerAccess(inventory, player.getName());
+    }
+
+    /**
+     * 以指定用户名记录容器事务（用于玩家可能已离线的后台操作）
+     * @param inventory 目标容器
+     * @param user 记录的用户名
+     * @return 是否成功记录
+     */
+    public boolean logContainerAccess(Inventory inventory, String user) {
+        return coreProtect.logContainerTransaction(user, inventory.getLocation());
+    }
+
+    @Override
+    public boolean beforeWrite(Inventory inventory, String user) {
+        return logContainerAccess(inventory, user);
+    }
+
+    @Override
+    public void afterWrite(Location location, UUID playerId, ItemKeyTable keys, List<ItemGroup> changes) {
+        // CoreProtect 在记录事务后自行比较容器内容的变化，无需额外记录
     }
 
 }
@@ -0,0 +1,528 @@
+package org.etwxr9.autoorganize;
+
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.inventory.DoubleChestInventory;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
+
+import com.destroystokyo.paper.event.server.ServerTickEndEvent;
+import com.destroystokyo.paper.event.server.ServerTickStartEvent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 容器碎片整理 - 在没有整理任务的空闲tick中整理工作站的存储：
+ * 先把散落在其他容器中的物品移到已有该物品最多的容器（主容器），再合并各容器内同种物品的未满堆叠
+ * 每次整理完成后其工作站范围排入队列（撤销记录释放的容器单独排入），由 {@link OrganizeScheduler}
+ * 在严格的时间预算内逐步处理：每一步只处理一个区块或一个容器，每步之后检查时间预算和本tick已用的时间，
+ * 上一tick或本tick超过MSPT上限时立即停止；以发起整理的玩家身份进行牌子锁检测和审计记录，
+ * 仍被撤销记录包含的容器不参与，也不为碎片整理加载区块
+ */
+public class ContainerCompactor implements Listener {
+
+    private static final long NANOS_PER_MS = 1_000_000L;
+    // 队列上限，超出的直接丢弃（碎片整理只是优化，不需要保证完成）
+    private static final int MAX_QUEUE_SIZE = 256;
+
+    private final AutoOrganize plugin;
+    private final Queue<Job> queue = new ArrayDeque<>();
+    // 已排队的工作站中心和单独排队的容器，避免重复排队
+    private final Set<Location> queued = new HashSet<>();
+
+    // 本tick开始的时间和上一tick的耗时，用于在服务器变慢时立即停止
+    private long tickStartNanos = System.nanoTime();
+    private double lastTickMs = 0;
+
+    /**
+     * 碎片整理阶段
+     */
+    private enum Phase {
+        COLLECT, // 逐个区块收集工作站范围内的容器
+        COUNT, // 统计每种物品的主容器
+        MOVE, // 把其他容器中的物品移到主容器
+        MERGE // 合并每个容器内的未满堆叠
+    }
+
+    public ContainerCompactor(AutoOrganize plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 将一次整理的工作站范围排入碎片整理队列
+     *
+     * @param center 工作站位置
+     * @param range  范围
+     * @param player 发起整理的玩家
+     */
+    public void enqueueStation(Location center, int range, Player player) {
+        if (queue.size() >= MAX_QUEUE_SIZE || !queued.add(center)) {
+            return;
+        }
+        ScanBox box = ScanBox.around(center, range, plugin.getBlockCombinationConfig().getYRadius());
+        queue.add(new Job(player, center, box, new ArrayList<>()));
+    }
+
+    /**
+     * 将单独的容器排入碎片整理队列（撤销记录离开历史时调用），物品只在这些容器之间移动
+     *
+     * @param locations 容器位置
+     * @param player    发起整理的玩家
+     */
+    public void enqueue(Collection<Location> locations, Player player) {
+        if (queue.size() >= MAX_QUEUE_SIZE) {
+            return;
+        }
+        List<Location> containers = new ArrayList<>();
+        for (Location location : locations) {
+            if (queued.add(location)) {
+                containers.add(location);
+            }
+        }
+        if (!containers.isEmpty()) {
+            queue.add(new Job(player, null, null, containers));
+        }
+    }
+
+    /**
+     * 等待整理的工作站和容器组数量
+     */
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * 在空闲tick中推进队列，超过配置的时间预算或MSPT上限时停止
+     */
+    public void tick() {
+        if (queue.isEmpty() || isOverloaded()) {
+            return;
+        }
+
+        long deadline = System.nanoTime() + (long) (plugin.getCompactionBudgetMs() * NANOS_PER_MS);
+        Job job;
+        while ((job = queue.peek()) != null) {
+            if (step(job)) {
+                queue.poll();
+                queued.removeAll(job.queuedKeys);
+            }
+            if (System.nanoTime() >= deadline || isOverloaded()) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 清空队列
+     */
+    public void clear() {
+        queue.clear();
+        queued.clear();
+    }
+
+    /**
+     * 上一tick的耗时或本tick到目前为止的耗时超过MSPT上限
+     */
+    private boolean isOverloaded() {
+        double maxMspt = plugin.getCompactionMaxMspt();
+        return lastTickMs > maxMspt || (double) (System.nanoTime() - tickStartNanos) / NANOS_PER_MS > maxMspt;
+    }
+
+    /**
+     * 执行一步：收集一个区块，或处理一个容器
+     *
+     * @return 是否已全部完成
+     */
+    private boolean step(Job job) {
+        switch (job.phase) {
+            case COLLECT:
+                if (job.cursor.isDone()) {
+                    job.phase = Phase.COUNT;
+                } else {
+                    collectChunk(job);
+                    job.cursor.advance();
+                }
+                return false;
+            case COUNT:
+                if (job.index < job.containers.size()) {
+                    count(job, job.index++);
+                } else {
+                    job.phase = Phase.MOVE;
+                    job.index = 0;
+                }
+                return false;
+            case MOVE:
+                if (job.index < job.containers.size()) {
+                    move(job, job.index++);
+                } else {
+                    job.phase = Phase.MERGE;
+                    job.index = 0;
+                }
+                return false;
+            case MERGE:
+            default:
+                if (job.index < job.containers.size()) {
+                    merge(job, job.index++);
+                    return false;
+                }
+                return true;
+        }
+    }
+
+    /**
+     * 收集当前区块中位于工作站范围内的容器位置，未加载的区块跳过
+     */
+    private void collectChunk(Job job) {
+        int chunkX = job.cursor.getX();
+        int chunkZ = job.cursor.getZ();
+        if (!job.box.getWorld().isChunkLoaded(chunkX, chunkZ)) {
+            return;
+        }
+        Chunk chunk = job.box.getWorld().getChunkAt(chunkX, chunkZ);
+        if (plugin.getContainerRegistry() != null) {
+            List<Block> blocks = new ArrayList<>();
+            plugin.getContainerRegistry().collect(chunk, job.box, blocks);
+            for (Block block : blocks) {
+                job.containers.add(block.getLocation());
+            }
+            return;
+        }
+        // 过滤器中直接记录位置并返回false，避免创建BlockState
+        chunk.getTileEntities(block -> {
+            if (job.box.contains(block.getX(), block.getY(), block.getZ())
+                    && OrganizeAlgorithm.isContainerBlock(block.getType())) {
+                job.containers.add(block.getLocation());
+            }
+            return false;
+        }, false);
+    }
+
+    /**
+     * 统计容器中每种物品的数量，数量最多的容器成为该物品的主容器
+     * 无法使用的容器和大箱子的另一半从列表中移除（置为null）
+     */
+    private void count(Job job, int index) {
+        Inventory inventory = open(job, job.containers.get(index));
+        if (inventory == null || (inventory instanceof DoubleChestInventory
+                && !job.seenDoubleChests.add(inventory.getLocation()))) {
+            job.containers.set(index, null);
+            return;
+        }
+
+        Map<Integer, Integer> amounts = new HashMap<>();
+        for (ItemStack item : inventory.getStorageContents()) {
+            if (item != null && !item.getType().isAir()) {
+                amounts.merge(job.keys.idOf(item), item.getAmount(), Integer::sum);
+            }
+        }
+        for (Map.Entry<Integer, Integer> entry : amounts.entrySet()) {
+            Integer best = job.homeAmounts.get(entry.getKey());
+            if (best == null || entry.getValue() > best) {
+                job.homes.put(entry.getKey(), index);
+                job.homeAmounts.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * 把一个容器中不属于它的物品移到各自的主容器，放不下的留在原处
+     * 所有涉及的容器都通过审计检查后才一起写入，避免物品重复或丢失
+     */
+    private void move(Job job, int index) {
+        Location location = job.containers.get(index);
+        if (location == null) {
+            return;
+        }
+        Inventory source = open(job, location);
+        if (source == null) {
+            return;
+        }
+        ItemStack[] contents = source.getStorageContents();
+
+        // 主容器下标 -> 要移过去的槽位
+        Map<Integer, List<Integer>> strays = new LinkedHashMap<>();
+        for (int slot = 0; slot < contents.length; slot++) {
+            ItemStack item = contents[slot];
+            if (item == null || item.getType().isAir()) {
+                continue;
+            }
+            Integer home = job.homes.get(job.keys.idOf(item));
+            if (home != null && home != index && job.containers.get(home) != null) {
+                strays.computeIfAbsent(home, k -> new ArrayList<>()).add(slot);
+            }
+        }
+        if (strays.isEmpty()) {
+            return;
+        }
+
+        List<Location> targetLocations = new ArrayList<>();
+        List<Inventory> targets = new ArrayList<>();
+        List<ItemStack[]> targetContents = new ArrayList<>();
+        List<List<ItemGroup>> targetChanges = new ArrayList<>();
+        List<ItemGroup> taken = new ArrayList<>();
+        for (Map.Entry<Integer, List<Integer>> entry : strays.entrySet()) {
+            Location targetLocation = job.containers.get(entry.getKey());
+            Inventory target = open(job, targetLocation);
+            if (target == null) {
+                continue;
+            }
+            ItemStack[] homeContents = target.getStorageContents();
+            List<ItemGroup> added = new ArrayList<>();
+            for (int slot : entry.getValue()) {
+                ItemStack item = contents[slot];
+                int moved = insert(homeContents, item);
+                if (moved == 0) {
+                    continue;
+                }
+                contents[slot] = moved == item.getAmount() ? null : withAmount(item, item.getAmount() - moved);
+                int keyId = job.keys.idOf(item);
+                addTo(added, keyId, moved);
+                addTo(taken, keyId, -moved);
+            }
+            if (!added.isEmpty()) {
+                targetLocations.add(targetLocation);
+                targets.add(target);
+                targetContents.add(homeContents);
+                targetChanges.add(added);
+            }
+        }
+        if (targets.isEmpty()) {
+            return;
+        }
+
+        // 先记录所有容器访问，任何一个失败都放弃本次移动
+        AuditLogger audit = plugin.getAuditLogger();
+        if (audit != null) {
+            if (!audit.beforeWrite(source, job.playerName)) {
+                return;
+            }
+            for (Inventory target : targets) {
+                if (!audit.beforeWrite(target, job.playerName)) {
+                    return;
+                }
+            }
+        }
+        for (int i = 0; i < targets.size(); i++) {
+            targets.get(i).setStorageContents(targetContents.get(i));
+        }
+        source.setStorageContents(contents);
+
+        if (audit != null) {
+            for (int i = 0; i < targets.size(); i++) {
+                audit.afterWrite(targetLocations.get(i), job.playerId, job.keys, targetChanges.get(i));
+            }
+            audit.afterWrite(location, job.playerId, job.keys, taken);
+        }
+    }
+
+    /**
+     * 合并单个容器内的未满堆叠，有变化时一次性写回
+     */
+    private void merge(Job job, int index) {
+        Location location = job.containers.get(index);
+        if (location == null) {
+            return;
+        }
+        Inventory inventory = open(job, location);
+        if (inventory == null) {
+            return;
+        }
+        ItemStack[] contents = inventory.getStorageContents();
+        if (!mergePartialStacks(contents)) {
+            return;
+        }
+
+        // 先记录容器访问（合并堆叠不改变物品数量，写入后无需记录变化）
+        AuditLogger audit = plugin.getAuditLogger();
+        if (audit != null && !audit.beforeWrite(inventory, job.playerName)) {
+            return;
+        }
+        inventory.setStorageContents(contents);
+    }
+
+    /**
+     * 取得可以进行碎片整理的容器：区块已加载、不被撤销记录包含、通过牌子锁检测
+     *
+     * @return 容器物品栏，不可用时返回null
+     */
+    private Inventory open(Job job, Location location) {
+        // 不为碎片整理加载区块
+        if (location.getWorld() == null || !location.isChunkLoaded()) {
+            return null;
+        }
+        // 排队期间可能又被新的撤销记录包含，碎片整理会使撤销失败
+        if (plugin.getUndoHistory() != null && plugin.getUndoHistory().isCovered(location)) {
+            return null;
+        }
+        Block block = location.getBlock();
+        if (!OrganizeAlgorithm.isContainerBlock(block.getType())) {
+            return null;
+        }
+        BlockState state = block.getState(false);
+        if (!(state instanceof InventoryHolder)) {
+            return null;
+        }
+
+        // 牌子锁检测需要玩家在线，玩家离线时跳过被保护的容器
+        if (plugin.isLocketteProEnabled()) {
+            Player player = plugin.getServer().getPlayer(job.playerId);
+            if (player == null ? plugin.getLocketteProHook().isProtected(block)
+                    : !plugin.getLocketteProHook().canAccess(player, block)) {
+                return null;
+            }
+        }
+        return ((InventoryHolder) state).getInventory();
+    }
+
+    /**
+     * 将物品放入容器内容：先补满相同物品的未满堆叠，再占用空槽位
+     *
+     * @param contents 容器内容，会被直接修改（只写入新的物品对象）
+     * @return 放入的数量
+     */
+    static int insert(ItemStack[] contents, ItemStack item) {
+        int max = item.getMaxStackSize();
+        int left = item.getAmount();
+        for (int slot = 0; slot < contents.length && left > 0; slot++) {
+            ItemStack existing = contents[slot];
+            if (existing != null && existing.getAmount() < max && existing.isSimilar(item)) {
+                int moved = Math.min(max - existing.getAmount(), left);
+                contents[slot] = withAmount(existing, existing.getAmount() + moved);
+                left -= moved;
+            }
+        }
+        for (int slot = 0; slot < contents.length && left > 0; slot++) {
+            if (contents[slot] == null || contents[slot].getType().isAir()) {
+                int moved = Math.min(max, left);
+                contents[slot] = withAmount(item, moved);
+                left -= moved;
+            }
+        }
+        return item.getAmount() - left;
+    }
+
+    /**
+     * 将后面的未满堆叠合并到前面相同物品的未满堆叠上
+     *
+     * @param contents 容器内容，会被直接修改（只写入新的物品对象）
+     * @return 是否有变化
+     */
+    static boolean mergePartialStacks(ItemStack[] contents) {
+        ItemKeyTable keys = new ItemKeyTable();
+        // 物品编号 -> 最前面的未满槽位
+        Map<Integer, Integer> openSlots = new HashMap<>();
+        boolean changed = false;
+
+        for (int slot = 0; slot < contents.length; slot++) {
+            ItemStack item = contents[slot];
+            if (item == null || item.getType().isAir()) {
+                continue;
+            }
+            int max = item.getMaxStackSize();
+            if (item.getAmount() >= max) {
+                continue;
+            }
+
+            int keyId = keys.idOf(item);
+            Integer target = openSlots.get(keyId);
+            if (target == null) {
+                openSlots.put(keyId, slot);
+                continue;
+            }
+
+            ItemStack targetItem = contents[target];
+            int moved = Math.min(max - targetItem.getAmount(), item.getAmount());
+            contents[target] = withAmount(targetItem, targetItem.getAmount() + moved);
+            contents[slot] = item.getAmount() == moved ? null : withAmount(item, item.getAmount() - moved);
+            changed = true;
+
+            if (contents[target].getAmount() >= max) {
+                openSlots.remove(keyId);
+            }
+            // 当前槽位还有剩余时成为新的未满槽位
+            if (contents[slot] != null) {
+                openSlots.put(keyId, slot);
+            }
+        }
+        return changed;
+    }
+
+    private static ItemStack withAmount(ItemStack item, int amount) {
+        ItemStack stack = item.clone();
+        stack.setAmount(amount);
+        return stack;
+    }
+
+    /**
+     * 将数量累加到列表中编号相同的组，没有时追加
+     */
+    private static void addTo(List<ItemGroup> groups, int keyId, int amount) {
+        for (ItemGroup group : groups) {
+            if (group.getKeyId() == keyId) {
+                group.add(amount);
+                return;
+            }
+        }
+        groups.add(new ItemGroup(keyId, amount));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onTickStart(ServerTickStartEvent event) {
+        tickStartNanos = System.nanoTime();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onTickEnd(ServerTickEndEvent event) {
+        lastTickMs = event.getTickDuration();
+    }
+
+    /**
+     * 一个工作站范围或一组单独排队的容器的碎片整理进度
+     */
+    private static class Job {
+        private final UUID playerId;
+        private final String playerName;
+        // 工作站范围，单独排队的容器为null
+        private final ScanBox box;
+        private final ChunkCursor cursor;
+        // 排队时加入 queued 的位置，完成后移除
+        private final List<Location> queuedKeys;
+        // 参与的容器，无法使用的置为null
+        private final List<Location> containers;
+        private final ItemKeyTable keys = new ItemKeyTable();
+        // 物品编号 -> 主容器（containers中的下标）及其中的数量
+        private final Map<Integer, Integer> homes = new HashMap<>();
+        private final Map<Integer, Integer> homeAmounts = new HashMap<>();
+        // 大箱子的两半共享同一个物品栏，只保留一个
+        private final Set<Location> seenDoubleChests = new HashSet<>();
+        private Phase phase;
+        private int index = 0;
+
+        private Job(Player player, Location center, ScanBox box, List<Location> containers) {
+            this.playerId = player.getUniqueId();
+            this.playerName = player.getName();
+            this.box = box;
+            this.cursor = box != null ? new ChunkCursor(box) : null;
+            this.containers = containers;
+            this.queuedKeys = center != null ? List.of(center) : new ArrayList<>(containers);
+            this.phase = box != null ? Phase.COLLECT : Phase.COUNT;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.etwxr9.autoorganize;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 容器倒排索引 - 每次整理只建立一次，记录每种物品（按物品编号）存在于哪些容器中
+ * 加入索引时为容器建立槽位摘要（{@link SlotSummary}），放置物品时无需再遍历容器内容
+ */
+public class ContainerIndex {
+
+    private final ItemKeyTable keys;
+    // 物品编号 -> 含有该物品的容器（按加入顺序）
+    private final Map<Integer, List<OrganizeAlgorithm.ContainerInfo>> byItem = new HashMap<>();
+    // 所有加入索引的容器（按加入顺序），写入放置计划时逐个遍历
+    private final List<OrganizeAlgorithm.ContainerInfo> all = new ArrayList<>();
+
+    /**
+     * @param keys 本次整理共用的物品键表
+     */
+    public ContainerIndex(ItemKeyTable keys) {
+        this.keys = keys;
+    }
+
+    /**
+     * 将容器加入索引，读取一次容器内容并建立槽位摘要
+     */
+    public void add(OrganizeAlgorithm.ContainerInfo info) {
+        SlotSummary summary = SlotSummary.of(info.getInventory().getStorageContents(), keys);
+        info.setSummary(summary);
+
+        for (int key : summary.getKeyIds()) {
+            byItem.computeIfAbsent(key, k -> new ArrayList<>()).add(info);
+        }
+        all.add(info);
+    }
+
+    /**
+     * 获取已含有该物品的容器
+     *
+     * @param keyId 物品编号（见 {@link ItemKeyTable#idOf(org.bukkit.inventory.ItemStack)}）
+     */
+    public List<OrganizeAlgorithm.ContainerInfo> getContainers(int keyId) {
+        List<OrganizeAlgorithm.ContainerInfo> containers = byItem.get(keyId);
+        return containers != null ? containers : Collections.emptyList();
+    }
+
+    /**
+     * 获取索引中的所有容器（按加入顺序）
+     */
+    public List<OrganizeAlgorithm.ContainerInfo> getAll() {
+        return all;
+    }
+
+    public ItemKeyTable getKeys() {
+        return keys;
+    }
+
+    /**
+     * 索引中的容器数量
+     */
+    public int size() {
+        return all.size();
+    }
+
+    public boolean isEmpty() {
+        return all.isEmpty();
+    }
+}
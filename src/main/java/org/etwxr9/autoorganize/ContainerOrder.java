@@ -0,0 +1,91 @@
+package org.etwxr9.autoorganize;
+
+import org.bukkit.Location;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 容器访问顺序策略 - 决定放置物品时先尝试哪些容器
+ * 每个工作站（下方方块类型）可以单独配置
+ * 流水线模式下容器分批找到后立即放置，顺序只在每批容器之内生效；
+ * 各批之间按扫描顺序（区块由近及远）进行
+ */
+public enum ContainerOrder {
+
+    /**
+     * 保持扫描器找到容器的顺序
+     */
+    SCAN,
+
+    /**
+     * 离工作站最近的容器优先，飞行动画最短
+     */
+    NEAREST,
+
+    /**
+     * 按区块（由近及远）再按区块段分组，放置集中在少数区块内，被修改的方块实体也更集中
+     */
+    CHUNK;
+
+    /**
+     * 按策略对容器排序
+     *
+     * @param containers 要排序的容器（原地排序）
+     * @param center     工作站位置
+     */
+    public void sort(List<OrganizeAlgorithm.ContainerInfo> containers, Location center) {
+        int cx = center.getBlockX();
+        int cy = center.getBlockY();
+        int cz = center.getBlockZ();
+        switch (this) {
+            case NEAREST:
+                containers.sort(Comparator.comparingLong(info -> distanceSquared(info.getLocation(), cx, cy, cz)));
+                break;
+            case CHUNK:
+                int chunkX = cx >> 4;
+                int chunkZ = cz >> 4;
+                int sectionY = cy >> 4;
+                containers.sort(Comparator
+                        .comparingInt((OrganizeAlgorithm.ContainerInfo info) -> Math.max(
+                                Math.abs((info.getLocation().getBlockX() >> 4) - chunkX),
+                                Math.abs((info.getLocation().getBlockZ() >> 4) - chunkZ)))
+                        .thenComparingInt(info -> chunkDistanceSquared(info.getLocation(), chunkX, chunkZ))
+                        .thenComparingInt(info -> info.getLocation().getBlockX() >> 4)
+                        .thenComparingInt(info -> info.getLocation().getBlockZ() >> 4)
+                        .thenComparingInt(info -> Math.abs((info.getLocation().getBlockY() >> 4) - sectionY))
+                        .thenComparingInt(info -> info.getLocation().getBlockY() >> 4)
+                        .thenComparingLong(info -> distanceSquared(info.getLocation(), cx, cy, cz)));
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 根据名称获取策略（不区分大小写），无效时返回默认值
+     */
+    public static ContainerOrder fromName(String name, ContainerOrder defaultOrder) {
+        if (name == null) {
+            return defaultOrder;
+        }
+        try {
+            return valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return defaultOrder;
+        }
+    }
+
+    private static long distanceSquared(Location location, int x, int y, int z) {
+        long dx = location.getBlockX() - x;
+        long dy = location.getBlockY() - y;
+        long dz = location.getBlockZ() - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static int chunkDistanceSquared(Location location, int chunkX, int chunkZ) {
+        int dx = (location.getBlockX() >> 4) - chunkX;
+        int dz = (location.getBlockZ() >> 4) - chunkZ;
+        return dx * dx + dz * dz;
+    }
+}
@@ -0,0 +1,260 @@
+package org.etwxr9.autoorganize;
+
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.data.Directional;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockDispenseEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 容器位置索引 - 按世界、区块、区块段记录所有容器方块的位置
+ * 区块加载时建立索引，之后通过方块事件保持更新，整理时直接查询而无需扫描
+ * 玩家放置和发射器放置的容器会加入索引；/setblock、WorldEdit等不触发方块事件的修改
+ * 在区块重新加载之前不会被发现
+ * 所有方法只应在主线程调用
+ */
+public class ContainerRegistry implements Listener {
+
+    private final AutoOrganize plugin;
+
+    // 世界UID -> 区块坐标 -> 区块索引
+    private final Map<UUID, Map<Long, ChunkEntry>> worlds = new HashMap<>();
+
+    /**
+     * 单个区块的容器索引
+     * 区块段Y坐标 -> 段内位置位图（4096位，索引为 y<<8 | z<<4 | x）
+     */
+    private static class ChunkEntry {
+        private final Map<Integer, BitSet> sections = new HashMap<>();
+
+        void add(int x, int y, int z) {
+            sections.computeIfAbsent(y >> 4, k -> new BitSet()).set(localIndex(x, y, z));
+        }
+
+        void remove(int x, int y, int z) {
+            BitSet bits = sections.get(y >> 4);
+            if (bits != null) {
+                bits.clear(localIndex(x, y, z));
+                if (bits.isEmpty()) {
+                    sections.remove(y >> 4);
+                }
+            }
+        }
+    }
+
+    public ContainerRegistry(AutoOrganize plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 收集区块中位于扫描范围内的容器方块，区块尚未建立索引时会先建立索引
+     *
+     * @param chunk 已加载的区块
+     * @param box   扫描范围
+     * @param out   找到的容器方块追加到此列表
+     */
+    public void collect(Chunk chunk, ScanBox box, List<Block> out) {
+        ChunkEntry entry = getOrIndex(chunk);
+        World world = chunk.getWorld();
+        int baseX = chunk.getX() << 4;
+        int baseZ = chunk.getZ() << 4;
+
+        for (int sectionY = box.getMinY() >> 4; sectionY <= box.getMaxY() >> 4; sectionY++) {
+            BitSet bits = entry.sections.get(sectionY);
+            if (bits == null) {
+                continue;
+            }
+            for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+                int x = baseX + (i & 15);
+                int y = (sectionY << 4) + (i >> 8);
+                int z = baseZ + ((i >> 4) & 15);
+                if (box.contains(x, y, z)) {
+                    out.add(world.getBlockAt(x, y, z));
+                }
+            }
+        }
+    }
+
+    /**
+     * 将某个位置从索引中移除（用于发现索引过期时自我修正）
+     */
+    public void remove(Block block) {
+        ChunkEntry entry = getEntry(block.getWorld(), block.getX() >> 4, block.getZ() >> 4);
+        if (entry != null) {
+            entry.remove(block.getX(), block.getY(), block.getZ());
+        }
+    }
+
+    /**
+     * 获取区块索引，不存在时建立
+     */
+    private ChunkEntry getOrIndex(Chunk chunk) {
+        ChunkEntry entry = getEntry(chunk.getWorld(), chunk.getX(), chunk.getZ());
+        return entry != null ? entry : indexChunk(chunk);
+    }
+
+    /**
+     * 遍历区块中的方块实体，建立容器索引
+     */
+    private ChunkEntry indexChunk(Chunk chunk) {
+        ChunkEntry entry = new ChunkEntry();
+        // 过滤器中直接记录位置并返回false，避免创建BlockState
+        chunk.getTileEntities(block -> {
+            if (OrganizeAlgorithm.isContainerBlock(block.getType())) {
+                entry.add(block.getX(), block.getY(), block.getZ());
+            }
+            return false;
+        }, false);
+        worlds.computeIfAbsent(chunk.getWorld().getUID(), k -> new HashMap<>())
+                .put(chunkKey(chunk.getX(), chunk.getZ()), entry);
+        return entry;
+    }
+
+    private ChunkEntry getEntry(World world, int chunkX, int chunkZ) {
+        Map<Long, ChunkEntry> chunks = worlds.get(world.getUID());
+        return chunks != null ? chunks.get(chunkKey(chunkX, chunkZ)) : null;
+    }
+
+    /**
+     * 丢弃区块索引，下次查询时重新建立
+     */
+    private void invalidate(World world, int chunkX, int chunkZ) {
+        Map<Long, ChunkEntry> chunks = worlds.get(world.getUID());
+        if (chunks != null) {
+            chunks.remove(chunkKey(chunkX, chunkZ));
+        }
+    }
+
+    /**
+     * 方块变为容器时更新索引（只更新已建立索引的区块）
+     */
+    private void onContainerPlaced(Block block) {
+        ChunkEntry entry = getEntry(block.getWorld(), block.getX() >> 4, block.getZ() >> 4);
+        if (entry != null) {
+            entry.add(block.getX(), block.getY(), block.getZ());
+        }
+    }
+
+    /**
+     * 方块被移除时更新索引
+     */
+    private void onBlocksRemoved(List<Block> blocks) {
+        for (Block block : blocks) {
+            if (OrganizeAlgorithm.isContainerBlock(block.getType())) {
+                remove(block);
+            }
+        }
+    }
+
+    /**
+     * 原版活塞无法推动容器，这里只处理其他服务端或插件允许推动的情况：
+     * 被推动的容器所在区块及相邻区块直接失效，避免推算移动方向
+     */
+    private void onBlocksMoved(List<Block> blocks) {
+        for (Block block : blocks) {
+            if (!OrganizeAlgorithm.isContainerBlock(block.getType())) {
+                continue;
+            }
+            int chunkX = block.getX() >> 4;
+            int chunkZ = block.getZ() >> 4;
+            invalidate(block.getWorld(), chunkX, chunkZ);
+            invalidate(block.getWorld(), chunkX - 1, chunkZ);
+            invalidate(block.getWorld(), chunkX + 1, chunkZ);
+            invalidate(block.getWorld(), chunkX, chunkZ - 1);
+            invalidate(block.getWorld(), chunkX, chunkZ + 1);
+        }
+    }
+
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkZ << 32) | (chunkX & 0xFFFFFFFFL);
+    }
+
+    private static int localIndex(int x, int y, int z) {
+        return (y & 15) << 8 | (z & 15) << 4 | (x & 15);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        indexChunk(event.getChunk());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        invalidate(event.getWorld(), event.getChunk().getX(), event.getChunk().getZ());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        worlds.remove(event.getWorld().getUID());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        Block block = event.getBlockPlaced();
+        if (OrganizeAlgorithm.isContainerBlock(block.getType())) {
+            onContainerPlaced(block);
+        }
+    }
+
+    /**
+     * 发射器放置潜影盒等容器：事件在放置之前触发，下一tick再检查发射器前方的方块
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockDispense(BlockDispenseEvent event) {
+        if (!OrganizeAlgorithm.isContainerBlock(event.getItem().getType())
+                || !(event.getBlock().getBlockData() instanceof Directional)) {
+            return;
+        }
+        Block target = event.getBlock().getRelative(((Directional) event.getBlock().getBlockData()).getFacing());
+        plugin.getServer().getScheduler().runTask(plugin, () -> {
+            if (OrganizeAlgorithm.isContainerBlock(target.getType())) {
+                onContainerPlaced(target);
+            }
+        });
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        if (OrganizeAlgorithm.isContainerBlock(event.getBlock().getType())) {
+            remove(event.getBlock());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        onBlocksRemoved(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        onBlocksRemoved(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonExtend(BlockPistonExtendEvent event) {
+        onBlocksMoved(event.getBlocks());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonRetract(BlockPistonRetractEvent event) {
+        onBlocksMoved(event.getBlocks());
+    }
+}
@@ -0,0 +1,56 @@
+package org.etwxr9.autoorganize;
+
+import java.util.List;
+
+/**
+ * 容器扫描器接口 - 在扫描范围内分批查找容器
+ * 每次调用 {@link #scan(int, List)} 只执行有限的工作量，便于分散到多个tick执行
+ */
+public interface ContainerScanner {
+
+    /**
+     * 执行一批扫描
+     *
+     * @param budget 本批次允许消耗的工作量
+     * @param found  找到的容器会追加到此列表
+     * @return 实际消耗的工作量
+     */
+    int scan(int budget, List<OrganizeAlgorithm.ContainerInfo> found);
+
+    /**
+     * 是否已扫描完整个范围
+     */
+    boolean isDone();
+
+    /**
+     * 预估完成扫描所需的总工作量（用于估算tick数）
+     */
+    long estimateWork();
+
+    /**
+     * 根据配置的扫描模式创建扫描器
+     *
+     * @param plugin 插件实例
+     * @param box    扫描范围
+     */
+    static ContainerScanner create(AutoOrganize plugin, ScanBox box) {
+        switch (plugin.getScanMode()) {
+            case "registry":
+                // 索引未启用时退回方块实体扫描
+                if (plugin.getContainerRegistry() != null) {
+                    return new RegistryContainerScanner(plugin.getContainerRegistry(), box);
+                }
+                return new TileEntityContainerScanner(box);
+            case "snapshot":
+                if (plugin.getScanExecutor() != null) {
+                    return new SnapshotContainerScanner(box, plugin.getScanExecutor());
+                }
+                return new TileEntityContainerScanner(box);
+            case "block":
+                return new BlockContainerScanner(box);
+            case "tile_entity":
+            default:
+                return new TileEntityContainerScanner(box);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.etwxr9.autoorganize;
+
+import org.bukkit.Location;
+import org.bukkit.NamespacedKey;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.ItemDisplay;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.EntitiesLoadEvent;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.persistence.PersistentDataType;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 展示实体池 - 飞行结束的ItemDisplay不移除，而是清空物品隐藏起来留给下一次飞行使用，
+ * 避免每次飞行都生成和移除实体；每个世界单独保存，总数超过上限的才真正移除
+ * 生成的实体都不保存到区块（非持久）并带有标记；崩溃等情况下残留在世界中的带标记实体在区块载入和插件启用时清除
+ */
+public class DisplayPool implements Listener {
+
+    private final AutoOrganize plugin;
+    private final int capacity;
+    // 本插件生成的展示实体的标记
+    private final NamespacedKey markerKey;
+    private final Map<UUID, Deque<ItemDisplay>> idle = new HashMap<>();
+    private int idleCount = 0;
+
+    public DisplayPool(AutoOrganize plugin, int capacity) {
+        this.plugin = plugin;
+        this.capacity = capacity;
+        this.markerKey = new NamespacedKey(plugin, "flight_display");
+    }
+
+    /**
+     * 取出一个展示实体放到起点并显示物品，池中没有可用实体时生成新的
+     *
+     * @param start 起点（已居中）
+     * @param item  要显示的物品
+     */
+    public ItemDisplay acquire(Location start, ItemStack item) {
+        ItemDisplay display = null;
+        Deque<ItemDisplay> displays = idle.get(start.getWorld().getUID());
+        while (displays != null && !displays.isEmpty()) {
+            ItemDisplay candidate = displays.pollLast();
+            idleCount--;
+            // 所在区块被卸载等情况下实体已失效
+            if (candidate.isValid()) {
+                display = candidate;
+                break;
+            }
+        }
+
+        if (display == null) {
+            // 在生成前设置属性，生成数据包中就已包含（包括是否默认可见）
+            display = start.getWorld().spawn(start, ItemDisplay.class, spawned -> {
+                spawned.setPersistent(false);
+                spawned.getPersistentDataContainer().set(markerKey, PersistentDataType.BYTE, (byte) 1);
+                ItemFlyingEffect.setupDisplay(plugin, spawned);
+            });
+        } else {
+            display.teleport(start);
+            ItemFlyingEffect.resetDisplay(display);
+        }
+        display.setItemStack(item);
+        return display;
+    }
+
+    /**
+     * 归还展示实体：清空物品隐藏起来，池满时直接移除
+     */
+    public void release(ItemDisplay display) {
+        if (display.isDead()) {
+            return;
+        }
+        if (idleCount >= capacity || !display.isValid()) {
+            display.remove();
+            return;
+        }
+        display.setItemStack(null);
+        display.setCustomNameVisible(false);
+        display.customName(null);
+        idle.computeIfAbsent(display.getWorld().getUID(), k -> new ArrayDeque<>()).addLast(display);
+        idleCount++;
+    }
+
+    /**
+     * 移除池中所有实体（插件卸载时调用）
+     */
+    public void clear() {
+        for (Deque<ItemDisplay> displays : idle.values()) {
+            for (ItemDisplay display : displays) {
+                if (!display.isDead()) {
+                    display.remove();
+                }
+            }
+        }
+        idle.clear();
+        idleCount = 0;
+    }
+
+    /**
+     * 清除已载入的世界中残留的带标记展示实体（插件启用时调用，此时还没有飞行）
+     */
+    public void purgeLoaded() {
+        int removed = 0;
+        for (World world : plugin.getServer().getWorlds()) {
+            for (ItemDisplay display : world.getEntitiesByClass(ItemDisplay.class)) {
+                if (isMarked(display)) {
+                    display.remove();
+                    removed++;
+                }
+            }
+        }
+        if (removed > 0) {
+            plugin.getLogger().info("已清除 " + removed + " 个残留的飞行展示实体");
+        }
+    }
+
+    /**
+     * 区块实体载入时清除残留的带标记展示实体（正在使用的实体不保存，不会从区块中载入）
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntitiesLoad(EntitiesLoadEvent event) {
+        for (Entity entity : event.getEntities()) {
+            if (entity instanceof ItemDisplay && isMarked(entity)) {
+                entity.remove();
+            }
+        }
+    }
+
+    private boolean isMarked(Entity entity) {
+        return entity.getPersistentDataContainer().has(markerKey, PersistentDataType.BYTE);
+    }
+}
@@ -0,0 +1,442 @@
+package org.etwxr9.autoorganize;
+
+import org.bukkit.Location;
+import org.bukkit.Particle;
+import org.bukkit.entity.ItemDisplay;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.util.Transformation;
+
+import net.kyori.adventure.text.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 飞行动画驱动 - 全插件共用一个每tick回调推进所有飞行中的物品
+ * 飞行状态保存在按槽位平铺的数组中，以环形队列排列：所有飞行时长相同，最早开始的总是最先结束，
+ * 因此结束的飞行总在队首；同时飞行数达到上限时直接结束最早的一个
+ * 短时间内飞向同一容器的物品合并为一个飞行并显示数量；每个玩家和每个世界的飞行数也有上限，
+ * 超出时不再播放新的效果；展示实体从 {@link DisplayPool} 取出，飞行结束后归还
+ * 按可见范围设置只对部分玩家显示展示实体，附近没有观看者时不播放
+ * 也可以不使用实体，改为沿同样的轨迹每tick只向观看者发送物品粒子（配置选择，或服务器负载高时自动切换）
+ */
+public class FlightAnimator extends BukkitRunnable {
+
+    // 客户端插值模式下把轨迹分成的段数
+    private static final int KEYFRAMES = 3;
+
+    /**
+     * 飞行动画方式
+     */
+    public enum Mode {
+        /**
+         * 每tick传送展示实体，每个飞行每tick一次实体移动数据包
+         */
+        TELEPORT,
+        /**
+         * 实体留在起点，只在几个关键帧设置变换的平移量，由客户端在关键帧之间插值，
+         * 每个飞行只需固定几次元数据更新
+         */
+        INTERPOLATE;
+
+        /**
+         * 根据名称获取动画方式（不区分大小写），无效时返回默认值
+         */
+        public static Mode fromName(String name, Mode defaultMode) {
+            if (name == null) {
+                return defaultMode;
+            }
+            try {
+                return valueOf(name.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return defaultMode;
+            }
+        }
+    }
+
+    /**
+     * 飞行效果的可见范围
+     */
+    public enum Visibility {
+        /**
+         * 所有玩家可见（附近没有玩家时不播放）
+         */
+        ALL,
+        /**
+         * 只有发起整理的玩家可见
+         */
+        OWNER,
+        /**
+         * 只有起点附近的玩家可见
+         */
+        NEARBY;
+
+        /**
+         * 根据名称获取可见范围（不区分大小写），无效时返回默认值
+         */
+        public static Visibility fromName(String name, Visibility defaultVisibility) {
+            if (name == null) {
+                return defaultVisibility;
+            }
+            try {
+                return valueOf(name.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return defaultVisibility;
+            }
+        }
+    }
+
+    /**
+     * 飞行效果的渲染方式
+     */
+    public enum Renderer {
+        /**
+         * 使用ItemDisplay实体
+         */
+        DISPLAY,
+        /**
+         * 只发送物品粒子，不生成实体
+         */
+        PARTICLE,
+        /**
+         * 平时使用实体，平均MSPT超过阈值时使用粒子
+         */
+        AUTO;
+
+        /**
+         * 根据名称获取渲染方式（不区分大小写），无效时返回默认值
+         */
+        public static Renderer fromName(String name, Renderer defaultRenderer) {
+            if (name == null) {
+                return defaultRenderer;
+            }
+            try {
+                return valueOf(name.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return defaultRenderer;
+            }
+        }
+    }
+
+    // 粒子飞行每tick发送的粒子数
+    private static final int PARTICLES_PER_TICK = 2;
+
+    private final AutoOrganize plugin;
+    private final DisplayPool pool;
+    private final int capacity;
+
+    // 每个槽位一个飞行：展示实体（粒子飞行为null）、粒子使用的物品、起点、起点到终点的位移、已飞行的tick数
+    private final ItemDisplay[] displays;
+    private final ItemStack[] particleItems;
+    private final double[] startX;
+    private final double[] startY;
+    private final double[] startZ;
+    private final double[] deltaX;
+    private final double[] deltaY;
+    private final double[] deltaZ;
+    private final int[] ticks;
+    // 发起整理的玩家、所在世界、目标容器（方块位置）和合并后的物品总数
+    private final UUID[] owners;
+    private final UUID[] worlds;
+    private final Location[] targets;
+    private final int[] amounts;
+    // 单独显示给了哪些玩家（所有玩家可见的实体飞行为null），结束时对他们重新隐藏；粒子只发送给他们
+    private final Player[][] viewers;
+    // 队首槽位和飞行数量
+    private int head = 0;
+    private int count = 0;
+
+    // 目标容器 -> 飞向它的最新飞行的槽位
+    private final Map<Location, Integer> targetSlots = new HashMap<>();
+    // 每个玩家、每个世界正在飞行的数量
+    private final Map<UUID, Integer> playerCounts = new HashMap<>();
+    private final Map<UUID, Integer> worldCounts = new HashMap<>();
+
+    // 传送时复用的位置对象
+    private final Location scratch = new Location(null, 0, 0, 0);
+
+    public FlightAnimator(AutoOrganize plugin, DisplayPool pool, int capacity) {
+        this.plugin = plugin;
+        this.pool = pool;
+        this.capacity = Math.max(1, capacity);
+        this.displays = new ItemDisplay[this.capacity];
+        this.particleItems = new ItemStack[this.capacity];
+        this.startX = new double[this.capacity];
+        this.startY = new double[this.capacity];
+        this.startZ = new double[this.capacity];
+        this.deltaX = new double[this.capacity];
+        this.deltaY = new double[this.capacity];
+        this.deltaZ = new double[this.capacity];
+        this.ticks = new int[this.capacity];
+        this.owners = new UUID[this.capacity];
+        this.worlds = new UUID[this.capacity];
+        this.targets = new Location[this.capacity];
+        this.amounts = new int[this.capacity];
+        this.viewers = new Player[this.capacity][];
+    }
+
+    /**
+     * 开始一个飞行
+     * 刚开始不久的飞向同一容器的飞行存在时合并进去；玩家或世界的飞行数达到上限时不播放；
+     * 同时飞行数达到总上限时先结束最早的飞行
+     *
+     * @param owner       发起整理的玩家
+     * @param item        放入的物品（数量可以超过最大堆叠数）
+     * @param startBlock  起点方块位置
+     * @param targetBlock 目标容器方块位置
+     */
+    public void launch(Player owner, ItemStack item, Location startBlock, Location targetBlock) {
+        UUID ownerId = owner.getUniqueId();
+        Integer merged = targetSlots.get(targetBlock);
+        if (merged != null && ticks[merged] <= plugin.getFlightMergeWindow() && owners[merged].equals(ownerId)) {
+            amounts[merged] += item.getAmount();
+            if (displays[merged] != null) {
+                showAmount(displays[merged], amounts[merged]);
+            }
+            return;
+        }
+
+        UUID worldId = startBlock.getWorld().getUID();
+        if (playerCounts.getOrDefault(ownerId, 0) >= plugin.getMaxFlightsPerPlayer()
+                || worldCounts.getOrDefault(worldId, 0) >= plugin.getMaxFlightsPerWorld()) {
+            return;
+        }
+
+        Location start = startBlock.clone().add(0.5, 0.5, 0.5); // 居中显示
+        Location target = targetBlock.clone().add(0.5, 0.5, 0.5); // 居中显示
+        List<Player> nearby = findViewers(owner, start);
+        if (nearby.isEmpty()) {
+            return;
+        }
+        if (count == capacity) {
+            finishHead();
+        }
+        // 物品组一次放入的数量可能超过最大堆叠数，显示时按最大堆叠数截断，超出的用数量标签显示
+        ItemStack displayItem = item.clone();
+        displayItem.setAmount(Math.min(displayItem.getAmount(), displayItem.getMaxStackSize()));
+        ItemDisplay display = null;
+        Player[] shownTo = null;
+        if (useParticles()) {
+            shownTo = nearby.toArray(new Player[0]);
+        } else {
+            display = pool.acquire(start, displayItem);
+            if (item.getAmount() > displayItem.getAmount()) {
+                showAmount(display, item.getAmount());
+            }
+            if (plugin.getFlightVisibility() != Visibility.ALL) {
+                shownTo = nearby.toArray(new Player[0]);
+                for (Player viewer : shownTo) {
+                    viewer.showEntity(plugin, display);
+                }
+            }
+        }
+
+        int slot = (head + count) % capacity;
+        displays[slot] = display;
+        particleItems[slot] = display == null ? displayItem : null;
+        owners[slot] = ownerId;
+        worlds[slot] = worldId;
+        targets[slot] = targetBlock;
+        amounts[slot] = item.getAmount();
+        viewers[slot] = shownTo;
+        targetSlots.put(targetBlock, slot);
+        playerCounts.merge(ownerId, 1, Integer::sum);
+        worldCounts.merge(worldId, 1, Integer::sum);
+        startX[slot] = start.getX();
+        startY[slot] = start.getY();
+        startZ[slot] = start.getZ();
+        deltaX[slot] = target.getX() - start.getX();
+        deltaY[slot] = target.getY() - start.getY();
+        deltaZ[slot] = target.getZ() - start.getZ();
+        ticks[slot] = 0;
+        count++;
+    }
+
+    /**
+     * 正在飞行的物品数量
+     */
+    public int getActiveCount() {
+        return count;
+    }
+
+    @Override
+    public void run() {
+        if (count == 0) {
+            return;
+        }
+        int duration = plugin.getFlightDuration();
+        for (int n = 0; n < count; n++) {
+            ticks[(head + n) % capacity]++;
+        }
+        // 到时间的飞行都在队首
+        while (count > 0 && ticks[head] >= duration) {
+            finishHead();
+        }
+
+        boolean interpolate = plugin.getFlightMode() == Mode.INTERPOLATE;
+        // 插值模式：生成后的下一tick设置第一个关键帧（同一tick内设置的变换不会被插值），之后每段设置一次
+        int segment = Math.max(1, (duration - 1) / KEYFRAMES);
+        for (int n = 0; n < count; n++) {
+            int slot = (head + n) % capacity;
+            ItemDisplay display = displays[slot];
+            if (display == null) {
+                spawnParticles(slot, (double) ticks[slot] / duration);
+                continue;
+            }
+            if (display.isDead()) {
+                continue;
+            }
+            if (!interpolate) {
+                teleport(display, slot, (double) ticks[slot] / duration);
+                continue;
+            }
+            int elapsed = ticks[slot] - 1;
+            int keyframe = elapsed / segment + 1;
+            if (elapsed % segment == 0 && keyframe <= KEYFRAMES) {
+                interpolate(display, slot, (double) keyframe / KEYFRAMES, segment);
+            }
+        }
+    }
+
+    /**
+     * 当前是否使用粒子渲染新的飞行
+     */
+    private boolean useParticles() {
+        switch (plugin.getFlightRenderer()) {
+            case PARTICLE:
+                return true;
+            case AUTO:
+                return plugin.getServer().getAverageTickTime() > plugin.getParticleRendererMspt();
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 在当前进度对应的位置向观看者发送物品粒子
+     */
+    private void spawnParticles(int slot, double progress) {
+        double eased = ease(progress);
+        scratch.setX(startX[slot] + deltaX[slot] * eased);
+        scratch.setY(startY[slot] + deltaY[slot] * eased + arcHeight(eased));
+        scratch.setZ(startZ[slot] + deltaZ[slot] * eased);
+        for (Player viewer : viewers[slot]) {
+            if (viewer.isOnline() && viewer.getWorld().getUID().equals(worlds[slot])) {
+                scratch.setWorld(viewer.getWorld());
+                viewer.spawnParticle(Particle.ITEM, scratch, PARTICLES_PER_TICK, 0.02, 0.02, 0.02, 0,
+                        particleItems[slot]);
+            }
+        }
+    }
+
+    /**
+     * 传送到当前进度对应的位置
+     */
+    private void teleport(ItemDisplay display, int slot, double progress) {
+        double eased = ease(progress);
+        display.getLocation(scratch);
+        scratch.setX(startX[slot] + deltaX[slot] * eased);
+        scratch.setY(startY[slot] + deltaY[slot] * eased + arcHeight(eased));
+        scratch.setZ(startZ[slot] + deltaZ[slot] * eased);
+        display.teleport(scratch);
+    }
+
+    /**
+     * 设置下一个关键帧：平移到该进度对应的位置（相对起点），客户端在 duration 个tick内插值过去
+     */
+    private void interpolate(ItemDisplay display, int slot, double progress, int duration) {
+        double eased = ease(progress);
+        Transformation t = display.getTransformation();
+        t.getTranslation().set((float) (deltaX[slot] * eased), (float) (deltaY[slot] * eased + arcHeight(eased)),
+                (float) (deltaZ[slot] * eased));
+        display.setInterpolationDelay(0);
+        display.setInterpolationDuration(duration);
+        display.setTransformation(t);
+    }
+
+    /**
+     * 二次缓出曲线: f(t) = 1 - (1-t)²，实现减速效果
+     */
+    private static double ease(double progress) {
+        return 1 - (1 - progress) * (1 - progress);
+    }
+
+    /**
+     * 轻微的弧形轨迹
+     */
+    private static double arcHeight(double eased) {
+        return 0.3 * Math.sin(eased * Math.PI);
+    }
+
+    /**
+     * 查找起点附近能看到这次飞行的玩家
+     */
+    private List<Player> findViewers(Player owner, Location start) {
+        double radius = plugin.getFlightVisibilityRadius();
+        double radiusSquared = radius * radius;
+        List<Player> result = new ArrayList<>();
+        if (plugin.getFlightVisibility() == Visibility.OWNER) {
+            if (owner.isOnline() && owner.getWorld().equals(start.getWorld())
+                    && owner.getLocation().distanceSquared(start) <= radiusSquared) {
+                result.add(owner);
+            }
+            return result;
+        }
+        for (Player player : start.getWorld().getPlayers()) {
+            if (player.getLocation().distanceSquared(start) <= radiusSquared) {
+                result.add(player);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 显示合并后的物品数量
+     */
+    private static void showAmount(ItemDisplay display, int amount) {
+        display.customName(Component.text("x" + amount));
+        display.setCustomNameVisible(true);
+    }
+
+    /**
+     * 结束所有飞行，展示实体归还到池中（插件卸载时调用，之后应清空池）
+     */
+    public void clear() {
+        while (count > 0) {
+            finishHead();
+        }
+    }
+
+    /**
+     * 结束队首的飞行，展示实体归还到池中
+     */
+    private void finishHead() {
+        ItemDisplay display = displays[head];
+        particleItems[head] = null;
+        if (display != null) {
+            if (viewers[head] != null) {
+                for (Player viewer : viewers[head]) {
+                    viewer.hideEntity(plugin, display);
+                }
+            }
+            pool.release(display);
+        }
+        viewers[head] = null;
+        targetSlots.remove(targets[head], head);
+        decrement(playerCounts, owners[head]);
+        decrement(worldCounts, worlds[head]);
+        displays[head] = null;
+        targets[head] = null;
+        head = (head + 1) % capacity;
+        count--;
+    }
+
+    private static void decrement(Map<UUID, Integer> counts, UUID key) {
+        counts.computeIfPresent(key, (k, v) -> v > 1 ? v - 1 : null);
+    }
+}
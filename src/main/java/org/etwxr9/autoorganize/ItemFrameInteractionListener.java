@@ -118,6 +118,11 @@ public class ItemFrameInteractionListener implements Listener {
             return;
         }
         
+        // 工作站的范围由管理员配置，只检查冷却
+        if (!plugin.getOrganizeAdmission().checkCooldown(player)) {
+            return;
+        }
+
         // 以下方方块为中心位置打开GUI
         BlockPosition centerPos = bottomBlock.getLocation().toBlock();
         
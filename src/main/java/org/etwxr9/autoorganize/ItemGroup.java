@@ -0,0 +1,32 @@
+package org.etwxr9.autoorganize;
+
+/**
+ * 物品组 - 同一种物品（相同物品编号）合并后的总数量
+ * 整理过程中只记录数量，需要返还给玩家时才按最大堆叠数拆分为物品堆
+ */
+public class ItemGroup {
+
+    private final int keyId;
+    private int amount;
+
+    public ItemGroup(int keyId, int amount) {
+        this.keyId = keyId;
+        this.amount = amount;
+    }
+
+    public int getKeyId() {
+        return keyId;
+    }
+
+    public int getAmount() {
+        return amount;
+    }
+
+    public void setAmount(int amount) {
+        this.amount = amount;
+    }
+
+    public void add(int amount) {
+        this.amount += amount;
+    }
+}
@@ -0,0 +1,97 @@
+package org.etwxr9.autoorganize;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+import io.papermc.paper.datacomponent.DataComponentType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 物品键表 - 为物品计算指纹并分配整数编号，每次整理使用一个实例
+ * 指纹由材质和物品上的数据组件（类型及被修改过的组件的值）组成，计算时不构建ItemMeta；
+ * 指纹相同时才调用 isSimilar 确认，确认后的物品共享同一编号
+ */
+public class ItemKeyTable {
+
+    private static final Material[] MATERIALS = Material.values();
+
+    // 不带数据组件的物品：材质序号 -> 编号（-1表示尚未分配）
+    private final int[] plainIds = new int[MATERIALS.length];
+    // 带数据组件的物品：指纹 -> 编号列表（哈希冲突时有多个）
+    private final Map<Long, List<Integer>> fingerprintIds = new HashMap<>();
+    // 编号 -> 原型（数量为1）
+    private final List<ItemStack> prototypes = new ArrayList<>();
+
+    public ItemKeyTable() {
+        Arrays.fill(plainIds, -1);
+    }
+
+    /**
+     * 获取物品的编号，相似的物品（isSimilar）得到相同的编号
+     */
+    public int idOf(ItemStack item) {
+        // 没有数据组件的物品只需比较材质
+        if (!item.hasItemMeta()) {
+            int ordinal = item.getType().ordinal();
+            if (plainIds[ordinal] < 0) {
+                plainIds[ordinal] = register(item);
+            }
+            return plainIds[ordinal];
+        }
+
+        List<Integer> candidates = fingerprintIds.computeIfAbsent(fingerprint(item), k -> new ArrayList<>(1));
+        for (int id : candidates) {
+            if (prototypes.get(id).isSimilar(item)) {
+                return id;
+            }
+        }
+        int id = register(item);
+        candidates.add(id);
+        return id;
+    }
+
+    /**
+     * 获取编号对应的原型物品（数量为1，不可修改）
+     */
+    public ItemStack getPrototype(int id) {
+        return prototypes.get(id);
+    }
+
+    /**
+     * 已分配的编号数量
+     */
+    public int size() {
+        return prototypes.size();
+    }
+
+    private int register(ItemStack item) {
+        ItemStack prototype = item.clone();
+        prototype.setAmount(1);
+        prototypes.add(prototype);
+        return prototypes.size() - 1;
+    }
+
+    /**
+     * 指纹：高32位为材质序号，低32位为数据组件的哈希（与组件顺序无关）
+     * getItemMeta() 每次调用都会构建一个完整的ItemMeta，这里直接读取组件：
+     * 同一材质的默认组件都相同，只有被修改过的组件（附魔、名称、药水、书和容器内容等）计入值的哈希，
+     * 使附魔书墙、药水墙中的不同物品落在不同的指纹上；组件值按内容计算哈希，相似的物品指纹一定相同
+     */
+    private static long fingerprint(ItemStack item) {
+        int hash = 0;
+        for (DataComponentType type : item.getDataTypes()) {
+            int componentHash = type.hashCode();
+            if (type instanceof DataComponentType.Valued && item.isDataOverridden(type)) {
+                componentHash = 31 * componentHash + Objects.hashCode(item.getData((DataComponentType.Valued<?>) type));
+            }
+            hash += componentHash;
+        }
+        return ((long) item.getType().ordinal() << 32) | (hash & 0xFFFFFFFFL);
+    }
+}
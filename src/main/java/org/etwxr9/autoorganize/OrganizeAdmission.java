@@ -0,0 +1,242 @@
+package org.etwxr9.autoorganize;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 整理请求准入控制 - 在创建整理任务之前检查请求
+ * 玩家输入的范围按权限限制，请求的代价（范围覆盖的区块数）按配置限制，超出时拒绝或缩小；每个玩家有冷却时间；
+ * 同时运行的整理和撤销任务数有上限，超出的任务按先后顺序排队，排队的玩家会收到自己的位置
+ */
+public class OrganizeAdmission {
+
+    /**
+     * 范围超出上限时的处理方式
+     */
+    public enum OverLimit {
+        /**
+         * 缩小到上限
+         */
+        CLAMP,
+        /**
+         * 拒绝请求
+         */
+        REJECT;
+
+        /**
+         * 根据名称获取处理方式（不区分大小写），无效时返回默认值
+         */
+        public static OverLimit fromName(String name, OverLimit defaultOverLimit) {
+            if (name == null) {
+                return defaultOverLimit;
+            }
+            try {
+                return valueOf(name.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return defaultOverLimit;
+            }
+        }
+    }
+
+    public static final String COOLDOWN_BYPASS_PERMISSION = "autoorganize.cooldown.bypass";
+
+    private final AutoOrganize plugin;
+    // 正在运行和排队中的整理和撤销任务
+    private final List<TimeSlicedTask> running = new ArrayList<>();
+    private final Deque<Entry> queue = new ArrayDeque<>();
+    // 玩家 -> 上次提交整理任务的时间
+    private final Map<UUID, Long> lastSubmit = new HashMap<>();
+
+    public OrganizeAdmission(AutoOrganize plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 检查玩家输入的范围：超出权限允许的上限，或估计的代价超出配置的区块数上限时，按配置缩小或拒绝
+     *
+     * @param player 玩家
+     * @param center 中心位置
+     * @param range  请求的范围
+     * @return 允许的范围，拒绝时返回-1（已通知玩家）
+     */
+    public int admitRange(Player player, Location center, int range) {
+        int limit = getRangeLimit(player);
+        long cost = estimateCost(center, range);
+        if (range <= limit && withinCost(cost)) {
+            return range;
+        }
+
+        // 权限上限内代价不超过区块数上限的最大范围
+        int allowed = Math.min(range, limit);
+        while (allowed > 1 && !withinCost(estimateCost(center, allowed))) {
+            allowed--;
+        }
+        if (plugin.getAdmissionOverLimit() == OverLimit.REJECT) {
+            player.sendMessage("§c范围 §e" + range + " §c(约 " + cost + " 个区块) 超过了上限，最大可用范围为 §e" + allowed);
+            return -1;
+        }
+        player.sendMessage("§e范围 " + range + " (约 " + cost + " 个区块) 超过了上限，已缩小为 " + allowed);
+        return allowed;
+    }
+
+    /**
+     * 估计请求的代价：范围覆盖的区块数（扫描器按区块工作）
+     */
+    private long estimateCost(Location center, int range) {
+        return ScanBox.around(center, range, plugin.getBlockCombinationConfig().getYRadius()).getChunkCount();
+    }
+
+    private boolean withinCost(long cost) {
+        return plugin.getAdmissionMaxChunks() <= 0 || cost <= plugin.getAdmissionMaxChunks();
+    }
+
+    /**
+     * 玩家可使用的最大范围：拥有的范围权限中最大的一个，没有时为默认上限
+     */
+    public int getRangeLimit(Player player) {
+        int limit = plugin.getDefaultMaxRange();
+        for (Map.Entry<String, Integer> entry : plugin.getRangePermissions().entrySet()) {
+            if (entry.getValue() > limit && player.hasPermission(entry.getKey())) {
+                limit = entry.getValue();
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * 检查玩家是否在冷却中
+     *
+     * @return 可以发起整理时返回true；冷却中返回false（已通知玩家）
+     */
+    public boolean checkCooldown(Player player) {
+        Long last = lastSubmit.get(player.getUniqueId());
+        if (last == null || player.hasPermission(COOLDOWN_BYPASS_PERMISSION)) {
+            return true;
+        }
+        long remaining = last + (long) (plugin.getAdmissionCooldownSeconds() * 1000) - System.currentTimeMillis();
+        if (remaining <= 0) {
+            return true;
+        }
+        player.sendMessage("§c整理冷却中，请在 §e" + String.format("%.1f", remaining / 1000.0) + " §c秒后再试");
+        return false;
+    }
+
+    /**
+     * 提交整理任务：运行中的任务数未达到上限时立即开始，否则排队
+     * 队列已满时中止任务（物品返还给玩家），不计冷却
+     */
+    public void submit(Player player, OrganizeTask task) {
+        submit(player, task, true);
+    }
+
+    /**
+     * 提交撤销任务：与整理任务共用运行数上限和队列，但不计冷却
+     * 队列已满时中止任务（撤销记录放回历史）
+     */
+    public void submitUndo(Player player, UndoTask task) {
+        submit(player, task, false);
+    }
+
+    private void submit(Player player, TimeSlicedTask task, boolean cooldown) {
+        removeFinished();
+        if (queue.isEmpty() && running.size() < plugin.getMaxRunningTasks()) {
+            if (cooldown) {
+                lastSubmit.put(player.getUniqueId(), System.currentTimeMillis());
+            }
+            start(task);
+            return;
+        }
+        if (queue.size() >= plugin.getMaxQueuedTasks()) {
+            player.sendMessage("§c整理队列已满，请稍后再试");
+            task.abort();
+            return;
+        }
+        if (cooldown) {
+            lastSubmit.put(player.getUniqueId(), System.currentTimeMillis());
+        }
+        queue.addLast(new Entry(player, task));
+        player.sendMessage("§e当前整理任务较多，已加入队列，排在第 §6" + queue.size() + " §e位");
+    }
+
+    /**
+     * 运行中的任务数低于上限时按顺序开始排队的任务，并通知仍在排队的玩家新的位置（由调度器每tick调用）
+     * 结束的任务可能已在 submit 中移除，因此每次都检查空位，而不只在本次移除了任务时
+     */
+    public void pump() {
+        removeFinished();
+        boolean started = false;
+        while (!queue.isEmpty() && running.size() < plugin.getMaxRunningTasks()) {
+            Entry entry = queue.pollFirst();
+            if (entry.player.isOnline()) {
+                entry.player.sendMessage("§a轮到你的整理任务了");
+            }
+            start(entry.task);
+            started = true;
+        }
+        if (!started) {
+            return;
+        }
+        int position = 1;
+        for (Entry entry : queue) {
+            if (entry.player.isOnline()) {
+                entry.player.sendMessage("§e整理队列中，你现在排在第 §6" + position + " §e位");
+            }
+            position++;
+        }
+    }
+
+    /**
+     * 排队中的任务数
+     */
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * 中止所有排队中的任务并返还物品（插件卸载时调用，运行中的任务由调度器中止）
+     */
+    public void clear() {
+        for (Entry entry : queue) {
+            entry.task.abort();
+        }
+        queue.clear();
+        running.clear();
+        lastSubmit.clear();
+    }
+
+    private void start(TimeSlicedTask task) {
+        running.add(task);
+        plugin.getOrganizeScheduler().submit(task);
+    }
+
+    /**
+     * 移除已结束的任务
+     */
+    private void removeFinished() {
+        Iterator<TimeSlicedTask> iterator = running.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isFinished()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static class Entry {
+        private final Player player;
+        private final TimeSlicedTask task;
+
+        private Entry(Player player, TimeSlicedTask task) {
+            this.player = player;
+            this.task = task;
+        }
+    }
+}
@@ -3,12 +3,9 @@ package org.etwxr9.autoorganize;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
-import org.bukkit.block.Block;
-import org.bukkit.block.BlockState;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.Inventory;
-import org.bukkit.inventory.InventoryHolder;
 import org.bukkit.inventory.ItemStack;
 
 import java.util.*;
@@ -40,26 +37,10 @@ public class OrganizeAlgorithm {
             return containers;
         }
 
-        int centerX = center.getBlockX();
-        int centerY = center.getBlockY();
-        int centerZ = center.getBlockZ();
-
-        // 遍历范围内的所有方块
-        for (int x = centerX - range; x <= centerX + range; x++) {
-            for (int y = centerY - range; y <= centerY + range; y++) {
-                for (int z = centerZ - range; z <= centerZ + range; z++) {
-                    Block block = world.getBlockAt(x, y, z);
-
-                    // 检查是否为容器方块（箱子、木桶等）
-                    if (isContainerBlock(block.getType())) {
-                        BlockState state = block.getState();
-                        if (state instanceof InventoryHolder) {
-                            InventoryHolder holder = (InventoryHolder) state;
-                            containers.add(new ContainerInfo(block.getLocation(), holder.getInventory()));
-                        }
-                    }
-                }
-            }
+        // 只遍历范围内各区块的方块实体，一次性扫描完成
+        ContainerScanner scanner = new TileEntityContainerScanner(ScanBox.around(center, range, range));
+        while (!scanner.isDone()) {
+            scanner.scan(Integer.MAX_VALUE, containers);
         }
 
         return containers;
@@ -200,6 +181,206 @@ public class OrganizeAlgorithm {
         return new PlacementResult(remaining, null, null);
     }
 
+    /**
+     * 放置策略
+     */
+    public enum Strategy {
+        /**
+         * 按容器访问顺序，每个容器先堆叠再占用空槽位
+         */
+        FIRST_FIT,
+        /**
+         * 已有该物品最多的容器优先；先在所有容器中补满未满的堆叠，再按同样顺序占用空槽位，
+         * 主容器装满之前不会在次要容器中开新槽位，使同种物品集中在尽量少的容器中
+         */
+        BEST_FIT;
+
+        /**
+         * 根据名称获取策略（不区分大小写），无效时返回默认值
+         */
+        public static Strategy fromName(String name, Strategy defaultStrategy) {
+            if (name == null) {
+                return defaultStrategy;
+            }
+            try {
+                return valueOf(name.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return defaultStrategy;
+            }
+        }
+    }
+
+    /**
+     * 按策略获取物品的候选容器（按尝试顺序排列）
+     *
+     * @param index    本次整理建立的容器索引
+     * @param keyId    物品编号
+     * @param strategy 放置策略
+     */
+    public static List<ContainerInfo> getCandidates(ContainerIndex index, int keyId, Strategy strategy) {
+        List<ContainerInfo> containers = index.getContainers(keyId);
+        if (strategy != Strategy.BEST_FIT || containers.size() < 2) {
+            return containers;
+        }
+        // 稳定排序：数量相同时保持容器访问顺序
+        List<ContainerInfo> sorted = new ArrayList<>(containers);
+        sorted.sort(Comparator.comparingInt((ContainerInfo info) -> info.getSummary().getTotal(keyId)).reversed());
+        return sorted;
+    }
+
+    /**
+     * 为一个物品组制定计划所需的步数（每步处理一个容器），供分片整理逐步推进
+     *
+     * @param candidates {@link #getCandidates} 返回的候选容器
+     * @param strategy   放置策略
+     */
+    public static int getPlanSteps(List<ContainerInfo> candidates, Strategy strategy) {
+        return strategy == Strategy.BEST_FIT ? candidates.size() * 2 : candidates.size();
+    }
+
+    /**
+     * 执行物品组放置计划的一步
+     * FIRST_FIT 每步处理一个容器的堆叠和空槽位；BEST_FIT 前一半步数只补满堆叠，后一半步数才占用空槽位
+     *
+     * @param candidates {@link #getCandidates} 返回的候选容器
+     * @param step       步序号（0 到 {@link #getPlanSteps} - 1）
+     * @param keyId      物品编号
+     * @param amount     尚未计划的数量
+     * @param keys       本次整理共用的物品键表
+     * @param strategy   放置策略
+     * @param placements 计划放入了物品时追加一条放置结果（用于视觉效果）
+     * @return 本步计划放入的数量
+     */
+    public static int planStep(List<ContainerInfo> candidates, int step, int keyId, int amount, ItemKeyTable keys,
+            Strategy strategy, List<PlacementResult> placements) {
+        int count = candidates.size();
+        ContainerInfo container = candidates.get(step % count);
+        if (strategy == Strategy.BEST_FIT) {
+            boolean topUp = step < count;
+            return planAmountInContainer(container, keyId, amount, keys, topUp, !topUp, placements);
+        }
+        return planAmountInContainer(container, keyId, amount, keys, true, true, placements);
+    }
+
+    /**
+     * 通过倒排索引为指定数量的同种物品（物品组）制定放置计划，放不下时继续计划下一个容器
+     * 只修改容器的槽位摘要，需之后调用 {@link #applyPlan} 写入容器
+     *
+     * @param keyId      物品编号
+     * @param amount     要放入的总数量（可以超过最大堆叠数）
+     * @param index      本次整理建立的容器索引
+     * @param strategy   放置策略
+     * @param placements 每个计划放入物品的容器追加一条放置结果（用于视觉效果）
+     * @return 剩余的数量
+     */
+    public static int planAmountWithIndex(int keyId, int amount, ContainerIndex index, Strategy strategy,
+            List<PlacementResult> placements) {
+        int remainingAmount = amount;
+
+        // 只遍历已经包含相同物品的容器
+        List<ContainerInfo> candidates = getCandidates(index, keyId, strategy);
+        int steps = getPlanSteps(candidates, strategy);
+        for (int step = 0; step < steps; step++) {
+            remainingAmount -= planStep(candidates, step, keyId, remainingAmount, index.getKeys(), strategy,
+                    placements);
+            if (remainingAmount <= 0) {
+                return 0;
+            }
+        }
+
+        return remainingAmount;
+    }
+
+    /**
+     * 为单个已建立槽位摘要的容器制定放置计划
+     *
+     * @param container  目标容器
+     * @param keyId      物品编号
+     * @param amount     要放入的数量
+     * @param keys       本次整理共用的物品键表
+     * @param topUp      是否堆叠到未满的相同物品上
+     * @param newSlots   是否占用空槽位
+     * @param placements 计划放入了物品时追加一条放置结果（用于视觉效果）
+     * @return 计划放入的数量
+     */
+    public static int planAmountInContainer(ContainerInfo container, int keyId, int amount, ItemKeyTable keys,
+            boolean topUp, boolean newSlots, List<PlacementResult> placements) {
+        Location location = container.getLocation();
+        // 检查方块是否被破坏
+        if (location.getBlock().getType() == Material.AIR) {
+            return 0;
+        }
+
+        ItemStack prototype = keys.getPrototype(keyId);
+        int placedAmount = planItemInSummary(container.getSummary(), prototype, keyId, amount, topUp, newSlots);
+        if (placedAmount > 0) {
+            int remainingAmount = amount - placedAmount;
+            ItemStack remainingItem = remainingAmount > 0 ? stackOf(prototype, remainingAmount) : null;
+            placements.add(new PlacementResult(remainingItem, stackOf(prototype, placedAmount), location));
+        }
+        return placedAmount;
+    }
+
+    /**
+     * 将容器的放置计划一次性写入：getStorageContents → 修改数组 → setStorageContents（支持CoreProtect记录）
+     * 每个容器只产生一次方块实体更新，写入前会确认目标槽位没有被改动
+     * 审计记录（CoreProtect或内置日志）只在确实有物品要写入时、紧接在写入前后记录一次，没有变化的容器不记录
+     *
+     * @param container 目标容器
+     * @param keys      本次整理共用的物品键表
+     * @param player    执行操作的玩家（用于CoreProtect记录）
+     * @param plugin    插件实例（用于获取Hook）
+     * @param rejected  未能写入的物品组（槽位已被改动、容器被破坏或记录失败）
+     * @param undo      撤销记录，写入成功后记录被写入的槽位；为null时不记录
+     * @return 是否写入了容器
+     */
+    public static boolean applyPlan(ContainerInfo container, ItemKeyTable keys, Player player, AutoOrganize plugin,
+            List<ItemGroup> rejected, UndoRecord undo) {
+        SlotSummary summary = container.getSummary();
+        if (summary == null || !summary.isDirty()) {
+            return false;
+        }
+        // 检查方块是否被破坏
+        if (container.getLocation().getBlock().getType() == Material.AIR) {
+            summary.discard(rejected);
+            return false;
+        }
+
+        Inventory inventory = container.getInventory();
+        ItemStack[] contents = inventory.getStorageContents();
+        // apply 只会替换被写入槽位的物品对象，保留原数组的副本用于对比
+        ItemStack[] before = undo != null ? contents.clone() : null;
+        List<ItemGroup> written = new ArrayList<>();
+        summary.apply(contents, keys, rejected, written);
+        if (written.isEmpty()) {
+            return false;
+        }
+
+        // 在写入前记录容器访问（CoreProtect记录的是写入前的内容）
+        AuditLogger audit = (player != null && plugin != null) ? plugin.getAuditLogger() : null;
+        if (audit != null && !audit.beforeWrite(inventory, player.getName())) {
+            // 如果记录失败，不执行放置操作
+            rejected.addAll(written);
+            return false;
+        }
+
+        inventory.setStorageContents(contents);
+        if (audit != null) {
+            audit.afterWrite(container.getLocation(), player.getUniqueId(), keys, written);
+        }
+        if (undo != null) {
+            for (int slot = 0; slot < contents.length; slot++) {
+                if (contents[slot] != before[slot]) {
+                    int beforeAmount = before[slot] == null || before[slot].getType() == Material.AIR ? 0
+                            : before[slot].getAmount();
+                    undo.record(container.getLocation(), slot, keys.idOf(contents[slot]), keys, beforeAmount,
+                            contents[slot].getAmount());
+                }
+            }
+        }
+        return true;
+    }
+
     /**
      * 放置结果信息类
      */
@@ -344,6 +525,80 @@ public class OrganizeAlgorithm {
         return remaining;
     }
 
+    /**
+     * 在槽位摘要中为物品制定放置计划，直接跳到摘要记录的目标槽位
+     * 不读取也不修改容器，写入由 {@link #applyPlan} 完成
+     *
+     * @param summary   目标容器的槽位摘要
+     * @param prototype 物品原型（数量为1）
+     * @param keyId     物品编号
+     * @param amount    要添加的数量
+     * @param topUp     是否堆叠到未满的相同物品上
+     * @param newSlots  是否占用空槽位
+     * @return 计划添加的数量
+     */
+    private static int planItemInSummary(SlotSummary summary, ItemStack prototype, int keyId, int amount,
+            boolean topUp, boolean newSlots) {
+        int maxStackSize = prototype.getMaxStackSize();
+        int remaining = amount;
+
+        // 首先尝试堆叠到未满的相同物品上
+        for (int slot = topUp ? summary.nextPartialSlot(keyId, 0) : -1; slot >= 0 && remaining > 0;
+                slot = summary.nextPartialSlot(keyId, slot + 1)) {
+            int toAdd = Math.min(maxStackSize - summary.getAmount(slot), remaining);
+            if (toAdd <= 0) {
+                continue;
+            }
+            summary.set(slot, keyId, summary.getAmount(slot) + toAdd, maxStackSize);
+            remaining -= toAdd;
+        }
+
+        // 然后尝试放入空槽位
+        for (int slot = newSlots ? summary.nextEmptySlot(0) : -1; slot >= 0 && remaining > 0;
+                slot = summary.nextEmptySlot(slot + 1)) {
+            int toPlace = Math.min(maxStackSize, remaining);
+            summary.set(slot, keyId, toPlace, maxStackSize);
+            remaining -= toPlace;
+        }
+
+        return amount - remaining;
+    }
+
+    /**
+     * 以原型创建指定数量的物品
+     */
+    private static ItemStack stackOf(ItemStack prototype, int amount) {
+        ItemStack stack = prototype.clone();
+        stack.setAmount(amount);
+        return stack;
+    }
+
+    /**
+     * 将物品组按最大堆叠数拆分为合法的物品堆
+     *
+     * @param keys   物品组使用的物品键表
+     * @param groups 物品组
+     */
+    public static List<ItemStack> splitIntoStacks(ItemKeyTable keys, List<ItemGroup> groups) {
+        List<ItemStack> stacks = new ArrayList<>();
+        for (ItemGroup group : groups) {
+            ItemStack prototype = keys.getPrototype(group.getKeyId());
+            int maxStackSize = prototype.getMaxStackSize();
+            for (int left = group.getAmount(); left > 0; left -= maxStackSize) {
+                stacks.add(stackOf(prototype, Math.min(maxStackSize, left)));
+            }
+        }
+        return stacks;
+    }
+
+    /**
+     * 将剩余的物品组拆分后返回给玩家
+     */
+    public static void returnItemsToPlayer(Player player, ItemKeyTable keys, List<ItemGroup> remainingGroups,
+            AutoOrganize plugin) {
+        returnItemsToPlayer(player, splitIntoStacks(keys, remainingGroups), plugin);
+    }
+
     /**
      * 将剩余物品返回给玩家
      */
@@ -371,6 +626,8 @@ public class OrganizeAlgorithm {
     public static class ContainerInfo {
         private final Location location;
         private final Inventory inventory;
+        // 槽位摘要，加入索引时建立
+        private SlotSummary summary;
 
         public ContainerInfo(Location location, Inventory inventory) {
             this.location = location;
@@ -384,5 +641,13 @@ public class OrganizeAlgorithm {
         public Inventory getInventory() {
             return inventory;
         }
+
+        public SlotSummary getSummary() {
+            return summary;
+        }
+
+        public void setSummary(SlotSummary summary) {
+            this.summary = summary;
+        }
     }
 }
@@ -119,8 +119,8 @@ public class OrganizeGUIManager implements Listener {
                     session.getRange(),
                     event.getInventory().getContents());
 
-            // 同步执行整理任务（分批处理避免卡顿）
-            organizeTask.runTaskTimer(plugin, 1L, 1L); // 延迟1tick开始，每1tick执行一次
+            // 经准入控制交给全局调度器分批执行（共享每tick时间预算，避免卡顿），任务较多时排队
+            plugin.getOrganizeAdmission().submit(player, organizeTask);
         } else {
             plugin.sendMessage(player, plugin.getMsgGuiNoItems());
         }
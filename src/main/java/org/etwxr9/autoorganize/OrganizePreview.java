@@ -0,0 +1,109 @@
+package org.etwxr9.autoorganize;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 整理预览报告 - 记录预览模式下的放置计划（每种物品会放入哪些容器）、溢出物品和耗时
+ * 预览使用与正式整理相同的扫描和放置算法，只是计划不会写入容器
+ */
+public class OrganizePreview {
+
+    // 报告中最多列出的物品种类数，以及每种物品最多列出的容器数
+    private static final int MAX_GROUP_LINES = 15;
+    private static final int MAX_TARGETS_PER_LINE = 3;
+
+    private final ItemKeyTable keys;
+    // 物品编号 -> (容器位置 -> 计划放入的数量)
+    private final Map<Integer, Map<Location, Integer>> targets = new LinkedHashMap<>();
+
+    private int ticks = 0;
+    private long nanos = 0;
+
+    public OrganizePreview(ItemKeyTable keys) {
+        this.keys = keys;
+    }
+
+    /**
+     * 记录一批放置计划
+     */
+    public void record(List<OrganizeAlgorithm.PlacementResult> placements) {
+        for (OrganizeAlgorithm.PlacementResult result : placements) {
+            int keyId = keys.idOf(result.getPlacedItem());
+            targets.computeIfAbsent(keyId, k -> new LinkedHashMap<>())
+                    .merge(result.getTargetLocation(), result.getPlacedItem().getAmount(), Integer::sum);
+        }
+    }
+
+    /**
+     * 记录一次时间片的耗时
+     */
+    public void addTick(long elapsedNanos) {
+        ticks++;
+        nanos += elapsedNanos;
+    }
+
+    /**
+     * 向玩家发送预览报告
+     *
+     * @param player          目标玩家
+     * @param containersFound 找到的可用容器数
+     * @param overflow        放不下的物品组
+     */
+    public void send(Player player, int containersFound, List<ItemGroup> overflow) {
+        player.sendMessage("§6=== 整理预览（未修改任何容器） ===");
+        player.sendMessage("§a可用容器: §e" + containersFound + " §a耗时: §e" + ticks + " tick §a(主线程累计 §e"
+                + String.format("%.2f", nanos / 1_000_000.0) + "ms§a)");
+
+        int lines = 0;
+        for (Map.Entry<Integer, Map<Location, Integer>> entry : targets.entrySet()) {
+            if (lines++ >= MAX_GROUP_LINES) {
+                player.sendMessage("  §7... 还有 " + (targets.size() - MAX_GROUP_LINES) + " 种物品");
+                break;
+            }
+            player.sendMessage("  §e" + describe(entry.getKey(), total(entry.getValue())) + " §a-> "
+                    + describeTargets(entry.getValue()));
+        }
+
+        if (overflow.isEmpty()) {
+            player.sendMessage("§a所有物品都能放入容器");
+        } else {
+            List<String> parts = new ArrayList<>();
+            for (ItemGroup group : overflow) {
+                parts.add(describe(group.getKeyId(), group.getAmount()));
+            }
+            player.sendMessage("§c溢出: §e" + String.join("§7, §e", parts));
+        }
+    }
+
+    private String describe(int keyId, int amount) {
+        return keys.getPrototype(keyId).getType().name() + " x" + amount;
+    }
+
+    private static String describeTargets(Map<Location, Integer> byLocation) {
+        List<String> parts = new ArrayList<>();
+        for (Map.Entry<Location, Integer> entry : byLocation.entrySet()) {
+            if (parts.size() >= MAX_TARGETS_PER_LINE) {
+                parts.add("§7等" + byLocation.size() + "个容器");
+                break;
+            }
+            Location location = entry.getKey();
+            parts.add("§7(" + location.getBlockX() + ", " + location.getBlockY() + ", " + location.getBlockZ()
+                    + ") §ex" + entry.getValue());
+        }
+        return String.join("§7, ", parts);
+    }
+
+    private static int total(Map<Location, Integer> byLocation) {
+        int sum = 0;
+        for (int amount : byLocation.values()) {
+            sum += amount;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,116 @@
+package org.etwxr9.autoorganize;
+
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 整理任务调度器 - 所有整理任务共享同一个每tick时间预算
+ * 预算按轮转顺序平均分配给各任务，并根据服务器MSPT自动收缩或增长
+ * 没有整理任务的空闲tick交给 {@link ContainerCompactor} 做碎片整理；
+ * 有任务结束后由 {@link OrganizeAdmission} 开始排队中的整理任务
+ */
+public class OrganizeScheduler extends BukkitRunnable {
+
+    private static final long NANOS_PER_MS = 1_000_000L;
+
+    private final AutoOrganize plugin;
+    private final List<TimeSlicedTask> tasks = new ArrayList<>();
+
+    // 当前每tick时间预算（纳秒）
+    private long budgetNanos;
+    // 轮转起点，保证每个任务轮流排在最前面
+    private int cursor = 0;
+
+    public OrganizeScheduler(AutoOrganize plugin) {
+        this.plugin = plugin;
+        this.budgetNanos = maxBudgetNanos();
+    }
+
+    /**
+     * 提交整理或撤销任务，从下一tick开始执行
+     */
+    public void submit(TimeSlicedTask task) {
+        tasks.add(task);
+    }
+
+    /**
+     * 正在运行的任务数量
+     */
+    public int getRunningCount() {
+        return tasks.size();
+    }
+
+    /**
+     * 当前每tick时间预算（毫秒）
+     */
+    public double getBudgetMs() {
+        return (double) budgetNanos / NANOS_PER_MS;
+    }
+
+    @Override
+    public void run() {
+        if (plugin.getOrganizeAdmission() != null) {
+            plugin.getOrganizeAdmission().pump();
+        }
+        if (tasks.isEmpty()) {
+            if (plugin.getContainerCompactor() != null) {
+                plugin.getContainerCompactor().tick();
+            }
+            return;
+        }
+        adjustBudget();
+
+        long end = System.nanoTime() + budgetNanos;
+        int count = tasks.size();
+        int start = cursor % count;
+        List<TimeSlicedTask> finished = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            TimeSlicedTask task = tasks.get((start + i) % count);
+            // 剩余预算平分给剩余任务，前面任务用不完的时间自动留给后面的任务
+            long now = System.nanoTime();
+            long slice = Math.max(0, (end - now) / (count - i));
+            if (task.tick(now + slice)) {
+                finished.add(task);
+            }
+        }
+
+        tasks.removeAll(finished);
+        cursor = start + 1;
+    }
+
+    /**
+     * 根据平均MSPT调整预算：超过目标时减半，明显低于目标时逐步增长
+     */
+    private void adjustBudget() {
+        double mspt = plugin.getServer().getAverageTickTime();
+        long max = maxBudgetNanos();
+        long min = Math.min(max, (long) (plugin.getMinTickBudgetMs() * NANOS_PER_MS));
+
+        if (mspt > plugin.getTargetMspt()) {
+            budgetNanos = Math.max(min, budgetNanos / 2);
+        } else if (mspt < plugin.getTargetMspt() * 0.8) {
+            budgetNanos = Math.min(max, budgetNanos + max / 10);
+        }
+        budgetNanos = Math.max(min, Math.min(max, budgetNanos));
+    }
+
+    private long maxBudgetNanos() {
+        return (long) (plugin.getTickBudgetMs() * NANOS_PER_MS);
+    }
+
+    /**
+     * 停止调度并中止所有任务，未整理的物品会返还给玩家
+     */
+    public void shutdown() {
+        if (!isCancelled()) {
+            cancel();
+        }
+        for (TimeSlicedTask task : tasks) {
+            task.abort();
+        }
+        tasks.clear();
+    }
+}
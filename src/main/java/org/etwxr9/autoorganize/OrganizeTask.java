@@ -2,97 +2,171 @@ package org.etwxr9.autoorganize;
 
 import org.bukkit.Location;
 import org.bukkit.Material;
-import org.bukkit.block.Block;
-import org.bukkit.block.BlockState;
 import org.bukkit.entity.Player;
-import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.DoubleChestInventory;
 import org.bukkit.inventory.ItemStack;
-import org.bukkit.scheduler.BukkitRunnable;
 
 import io.papermc.paper.math.BlockPosition;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * 同步整理任务类 - 处理分批执行的整理逻辑
- * 使用同步任务避免异步访问世界数据的问题，通过分批处理实现性能负载均衡
+ * 使用同步任务避免异步访问世界数据的问题，由 {@link OrganizeScheduler} 在每tick的时间片内推进
  */
-public class OrganizeTask extends BukkitRunnable {
+public class OrganizeTask implements TimeSlicedTask {
+
+    // 每次调用扫描器的工作量，两次调用之间检查时间片是否用完
+    private static final int SCAN_BATCH = 32;
 
     private final AutoOrganize plugin;
     private final Player player;
     private final Location loc;
     private final int range;
     private final int yRadius;
-    private final List<ItemStack> itemsToOrganize;
-
-    private List<OrganizeAlgorithm.ContainerInfo> containers;
-    private int currentItemIndex = 0;
-    private final List<ItemStack> remainingItems;
+    // 容器访问顺序，由工作站（中心位置的下方方块）决定
+    private final ContainerOrder containerOrder;
+    // 本次整理共用的物品键表；输入物品按编号合并为物品组，每组只需查找一次容器
+    private final ItemKeyTable keys = new ItemKeyTable();
+    private final List<ItemGroup> itemGroups;
+    private int totalAmount = 0;
+
+    // 非流水线模式下找到的容器，开始放置物品时才建立索引，使槽位摘要尽量新鲜
+    private final List<OrganizeAlgorithm.ContainerInfo> containers = new ArrayList<>();
+    private ContainerIndex index;
+    // 大箱子的两半共享同一个物品栏，只保留一个
+    private final Set<Location> seenDoubleChests = new HashSet<>();
+    // 整理阶段的游标：建立索引到第几个容器、放置到第几组物品的第几步（见 OrganizeAlgorithm.planStep），
+    // 当前组的候选容器，以及当前组还剩多少
+    private int indexCursor = 0;
+    private int currentGroupIndex = 0;
+    private int currentStep = 0;
+    private List<OrganizeAlgorithm.ContainerInfo> currentTargets;
+    private int currentGroupLeft = -1;
+    // 写入阶段的游标：下一个要写入放置计划的容器
+    private int applyCursor = 0;
+    // 上次发送整理进度的时间，跨多个tick时每秒最多发送一次
+    private long lastProgressMillis = 0;
+    private final List<ItemGroup> remainingGroups;
+
+    // 流水线模式：边扫描边整理，找到的容器用完即丢弃
+    // best_fit 需要在整个范围内比较各容器已有的物品数量，只在 first_fit 策略下使用
+    private final boolean streaming;
+    private final List<ItemGroup> pendingGroups;
+    private int containersFound = 0;
+
+    // 预览模式：只制定放置计划并汇报，不写入容器、不播放效果、不拿走也不返还物品
+    private final OrganizePreview preview;
+    private boolean previewComplete = false;
+    // 撤销记录，未启用撤销或预览模式下为null
+    private final UndoRecord undo;
 
     // 任务执行阶段
-    private TaskPhase currentPhase = TaskPhase.FIND_CONTAINERS;
+    private TaskPhase currentPhase;
+    private boolean finished = false;
 
     // 从配置文件读取的值
-    private final int BLOCKS_SCAN_PER_TICK; // 每tick扫描的方块数量
+    private final int BLOCKS_SCAN_PER_TICK; // 每tick扫描工作量上限
 
     // 容器搜索相关变量
-    private int scanX, scanY, scanZ;
-    private int minX, minY, minZ, maxX, maxY, maxZ;
+    private ContainerScanner scanner;
     private boolean scanInitialized = false;
 
     /**
      * 任务执行阶段枚举
      */
     private enum TaskPhase {
+        STREAMING, // 由近及远边扫描边整理阶段
         FIND_CONTAINERS, // 查找容器阶段
-        ORGANIZE_ITEMS, // 整理物品阶段
+        ORGANIZE_ITEMS, // 整理物品阶段（制定放置计划）
+        APPLY_PLAN, // 写入放置计划阶段
         FINISH // 完成阶段
     }
 
     public OrganizeTask(AutoOrganize plugin, Player player, BlockPosition pos, int range, ItemStack[] items) {
+        this(plugin, player, pos, range, items, false);
+    }
+
+    /**
+     * @param preview 是否为预览模式（items 只是副本，任务结束时不会返还）
+     */
+    public OrganizeTask(AutoOrganize plugin, Player player, BlockPosition pos, int range, ItemStack[] items,
+            boolean preview) {
         this.plugin = plugin;
         this.player = player;
         this.loc = pos.toLocation(player.getWorld());
         this.range = range;
         this.yRadius = plugin.getBlockCombinationConfig().getYRadius();
-        this.itemsToOrganize = new ArrayList<>();
-        this.remainingItems = new ArrayList<>();
+        this.containerOrder = plugin.getBlockCombinationConfig().getContainerOrder(loc.getBlock().getType());
+        this.itemGroups = new ArrayList<>();
+        this.remainingGroups = new ArrayList<>();
 
         // 从配置文件读取性能参数
         this.BLOCKS_SCAN_PER_TICK = plugin.getBlocksPerTick();
 
-        // 过滤掉空物品
+        // 过滤掉空物品，相同物品合并为一组
+        // 键表是新建的，编号从0开始连续分配，因此物品组的下标就是物品编号
         for (ItemStack item : items) {
             if (item != null && item.getType() != Material.AIR) {
-                this.itemsToOrganize.add(item.clone());
+                int keyId = keys.idOf(item);
+                if (keyId < itemGroups.size()) {
+                    itemGroups.get(keyId).add(item.getAmount());
+                } else {
+                    itemGroups.add(new ItemGroup(keyId, item.getAmount()));
+                }
+                totalAmount += item.getAmount();
+            }
+        }
+
+        this.preview = preview ? new OrganizePreview(keys) : null;
+        this.undo = !preview && plugin.getUndoHistory() != null ? new UndoRecord(player.getWorld()) : null;
+        this.streaming = plugin.isStreamingEnabled()
+                && plugin.getPlacementStrategy() == OrganizeAlgorithm.Strategy.FIRST_FIT;
+        this.currentPhase = streaming ? TaskPhase.STREAMING : TaskPhase.FIND_CONTAINERS;
+        this.pendingGroups = new ArrayList<>();
+        if (streaming) {
+            for (ItemGroup group : itemGroups) {
+                this.pendingGroups.add(new ItemGroup(group.getKeyId(), group.getAmount()));
             }
         }
     }
 
+    /**
+     * 在时间片内推进任务
+     *
+     * @param deadlineNanos 本次时间片的截止时间（System.nanoTime）
+     * @return 任务是否已结束
+     */
     @Override
-    public void run() {
+    public boolean tick(long deadlineNanos) {
+        long tickStart = System.nanoTime();
         try {
             // 检查玩家是否仍然有效
             if (!player.isOnline()) {
-                this.cancel();
-                plugin.getLogger().info("玩家 " + player.getName() + " 在整理过程中离线，物品将掉落在原地");
-                for (ItemStack item : itemsToOrganize) {
-                    if (item != null && item.getType() != Material.AIR) {
-                        player.getWorld().dropItemNaturally(player.getLocation(), item);
-                    }
+                finished = true;
+                if (preview == null) {
+                    plugin.getLogger().info("玩家 " + player.getName() + " 在整理过程中离线，物品将掉落在原地");
                 }
-                return;
+                giveBack(getUnprocessedGroups());
+                return true;
             }
 
             // 根据当前阶段执行相应的处理
             switch (currentPhase) {
+                case STREAMING:
+                    streamingPhase(deadlineNanos);
+                    break;
                 case FIND_CONTAINERS:
-                    findContainersPhase();
+                    findContainersPhase(deadlineNanos);
                     break;
                 case ORGANIZE_ITEMS:
-                    organizeItemsPhase();
+                    organizeItemsPhase(deadlineNanos);
+                    break;
+                case APPLY_PLAN:
+                    applyPlanPhase(deadlineNanos);
                     break;
                 case FINISH:
                     finishOrganizing();
@@ -106,49 +180,244 @@ public class OrganizeTask extends BukkitRunnable {
 
             if (player.isOnline()) {
                 plugin.sendMessage(player, plugin.getMsgErrorOccurred());
-                // 返回所有物品给玩家
-                List<ItemStack> allItems = new ArrayList<>(itemsToOrganize);
-                allItems.addAll(remainingItems);
-                OrganizeAlgorithm.returnItemsToPlayer(player, allItems, plugin);
-            } else {
-                for (ItemStack item : itemsToOrganize) {
-                    if (item != null && item.getType() != Material.AIR) {
-                        player.getWorld().dropItemNaturally(player.getLocation(), item);
-                    }
+            }
+            // 返回所有尚未放入容器的物品给玩家
+            giveBack(getUnprocessedGroups());
+
+            finished = true;
+        }
+
+        // 预览模式统计每个时间片的耗时，完成后发送报告
+        if (preview != null) {
+            preview.addTick(System.nanoTime() - tickStart);
+            if (previewComplete) {
+                preview.send(player, containersFound, remainingGroups);
+            }
+        }
+        return finished;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * 中止任务（插件卸载时调用），尚未处理的物品返还给玩家
+     */
+    @Override
+    public void abort() {
+        giveBack(getUnprocessedGroups());
+        finished = true;
+    }
+
+    /**
+     * 将物品组返还给玩家，玩家离线时掉落在原地（预览模式下物品从未被拿走，不返还）
+     */
+    private void giveBack(List<ItemGroup> groups) {
+        if (preview != null) {
+            return;
+        }
+        if (player.isOnline()) {
+            OrganizeAlgorithm.returnItemsToPlayer(player, keys, groups, plugin);
+        } else {
+            dropItems(groups);
+        }
+    }
+
+    /**
+     * 获取尚未放入容器的物品组（待处理的物品、已确定放不下的物品和尚未写入容器的计划）
+     * 只在任务结束时调用：尚未写入的计划会被放弃
+     */
+    private List<ItemGroup> getUnprocessedGroups() {
+        List<ItemGroup> unprocessed = new ArrayList<>();
+        if (streaming) {
+            unprocessed.addAll(pendingGroups);
+        } else if (currentGroupIndex < itemGroups.size()) {
+            // 当前组可能已经放入了一部分
+            ItemGroup current = itemGroups.get(currentGroupIndex);
+            int left = currentGroupLeft >= 0 ? currentGroupLeft : current.getAmount();
+            if (left > 0) {
+                unprocessed.add(new ItemGroup(current.getKeyId(), left));
+            }
+            unprocessed.addAll(itemGroups.subList(currentGroupIndex + 1, itemGroups.size()));
+        }
+        unprocessed.addAll(remainingGroups);
+        if (index != null) {
+            List<OrganizeAlgorithm.ContainerInfo> planned = index.getAll();
+            for (int i = applyCursor; i < planned.size(); i++) {
+                if (planned.get(i).getSummary() != null) {
+                    planned.get(i).getSummary().discard(unprocessed);
                 }
             }
+        }
+        return unprocessed;
+    }
 
-            this.cancel();
+    /**
+     * 将物品组拆分为物品堆并掉落在玩家位置（玩家离线时使用）
+     */
+    private void dropItems(List<ItemGroup> groups) {
+        for (ItemStack item : OrganizeAlgorithm.splitIntoStacks(keys, groups)) {
+            player.getWorld().dropItemNaturally(player.getLocation(), item);
+        }
+    }
+
+    /**
+     * 流水线阶段：由近及远扫描，找到容器后立即把匹配的物品放进去，所有物品放完即停止扫描
+     */
+    private void streamingPhase(long deadlineNanos) {
+        // 初始化扫描范围（只在第一次执行时）
+        if (!scanInitialized) {
+            initializeScan();
+        }
+
+        List<OrganizeAlgorithm.ContainerInfo> found = new ArrayList<>();
+        int units = 0;
+        while (units < BLOCKS_SCAN_PER_TICK && !scanner.isDone() && !pendingGroups.isEmpty()) {
+            found.clear();
+            int used = scanner.scan(Math.min(SCAN_BATCH, BLOCKS_SCAN_PER_TICK - units), found);
+            units += used;
+
+            // 为本批容器按访问顺序建立索引，放入物品后即丢弃（访问顺序只在本批之内生效）
+            found.removeIf(info -> !accept(info));
+            containerOrder.sort(found, loc);
+            ContainerIndex batch = new ContainerIndex(keys);
+            for (OrganizeAlgorithm.ContainerInfo info : found) {
+                batch.add(info);
+            }
+            if (!batch.isEmpty()) {
+                containersFound += batch.size();
+                placePendingGroups(batch);
+            }
+            // 扫描器暂时无事可做（例如在等待工作线程）或时间片用完
+            if (used == 0 || System.nanoTime() >= deadlineNanos) {
+                break;
+            }
+        }
+
+        // 所有物品都已放完，或整个范围已扫描完毕
+        if (pendingGroups.isEmpty() || scanner.isDone()) {
+            if (containersFound == 0) {
+                plugin.sendMessage(player, plugin.getMsgNoContainers());
+                giveBack(pendingGroups);
+                finished = true;
+                return;
+            }
+
+            remainingGroups.addAll(pendingGroups);
+            pendingGroups.clear();
+            currentPhase = TaskPhase.FINISH;
+            finishOrganizing();
+        }
+    }
+
+    /**
+     * 尝试将所有待整理物品组放入刚找到的一批容器
+     * 容器只在这里使用一次：之后放入的物品都已经和它比较过，无需保留
+     */
+    private void placePendingGroups(ContainerIndex batch) {
+        index = batch;
+        applyCursor = 0;
+
+        // 倒序遍历，便于移除已计划完的物品组
+        for (int i = pendingGroups.size() - 1; i >= 0; i--) {
+            ItemGroup group = pendingGroups.get(i);
+            group.setAmount(placeGroup(group, batch));
+            if (group.getAmount() <= 0) {
+                pendingGroups.remove(i);
+            }
+        }
+
+        // 每个容器一次性写入，未能写入的物品放回待处理列表，交给后面的容器（预览模式不写入）
+        List<ItemGroup> rejected = new ArrayList<>();
+        while (preview == null && applyCursor < batch.getAll().size()) {
+            OrganizeAlgorithm.applyPlan(batch.getAll().get(applyCursor++), keys, player, plugin, rejected, undo);
+        }
+        for (ItemGroup group : rejected) {
+            addToGroups(pendingGroups, group);
+        }
+        index = null;
+    }
+
+    /**
+     * 将物品组合并到列表中编号相同的组，没有时追加
+     */
+    private static void addToGroups(List<ItemGroup> groups, ItemGroup group) {
+        for (ItemGroup existing : groups) {
+            if (existing.getKeyId() == group.getKeyId()) {
+                existing.add(group.getAmount());
+                return;
+            }
+        }
+        groups.add(group);
+    }
+
+    /**
+     * 通过索引为一个物品组制定放置计划并播放视觉效果
+     *
+     * @return 剩余的数量
+     */
+    private int placeGroup(ItemGroup group, ContainerIndex containerIndex) {
+        List<OrganizeAlgorithm.PlacementResult> placements = new ArrayList<>();
+        int remaining = OrganizeAlgorithm.planAmountWithIndex(group.getKeyId(), group.getAmount(),
+                containerIndex, plugin.getPlacementStrategy(), placements);
+        playEffects(placements);
+        return remaining;
+    }
+
+    /**
+     * 每个放入了物品的容器创建一个视觉效果（预览模式下只记录到报告）
+     */
+    private void playEffects(List<OrganizeAlgorithm.PlacementResult> placements) {
+        if (preview != null) {
+            preview.record(placements);
+            return;
+        }
+        for (OrganizeAlgorithm.PlacementResult result : placements) {
+            ItemFlyingEffect.createAndStart(plugin, player, result.getPlacedItem(), loc, result.getTargetLocation());
         }
     }
 
     /**
      * 第一阶段：分批查找容器
      */
-    private void findContainersPhase() {
+    private void findContainersPhase(long deadlineNanos) {
         // 初始化扫描范围（只在第一次执行时）
         if (!scanInitialized) {
             initializeScan();
         }
 
-        // 分批扫描方块
-        int scannedBlocks = 0;
-        while (scannedBlocks < BLOCKS_SCAN_PER_TICK && hasMoreBlocksToScan()) {
-            scanCurrentBlock();
-            moveToNextBlock();
-            scannedBlocks++;
+        // 在时间片和工作量上限内分批扫描容器
+        List<OrganizeAlgorithm.ContainerInfo> found = new ArrayList<>();
+        int units = 0;
+        while (units < BLOCKS_SCAN_PER_TICK && !scanner.isDone()) {
+            int used = scanner.scan(Math.min(SCAN_BATCH, BLOCKS_SCAN_PER_TICK - units), found);
+            units += used;
+            // 扫描器暂时无事可做（例如在等待工作线程）或时间片用完
+            if (used == 0 || System.nanoTime() >= deadlineNanos) {
+                break;
+            }
+        }
+        for (OrganizeAlgorithm.ContainerInfo info : found) {
+            if (accept(info)) {
+                containers.add(info);
+            }
         }
 
         // 如果扫描完成，进入下一阶段
-        if (!hasMoreBlocksToScan()) {
+        if (scanner.isDone()) {
             if (containers.isEmpty()) {
                 plugin.sendMessage(player, plugin.getMsgNoContainers());
-                OrganizeAlgorithm.returnItemsToPlayer(player, itemsToOrganize, plugin);
-                this.cancel();
+                giveBack(itemGroups);
+                finished = true;
                 return;
             }
 
-            plugin.sendMessage(player, plugin.getMsgContainersFound(), "count", String.valueOf(containers.size()));
+            containersFound = containers.size();
+            if (preview == null) {
+                plugin.sendMessage(player, plugin.getMsgContainersFound(), "count", String.valueOf(containersFound));
+            }
             currentPhase = TaskPhase.ORGANIZE_ITEMS;
         }
     }
@@ -157,25 +426,15 @@ public class OrganizeTask extends BukkitRunnable {
      * 初始化扫描参数
      */
     private void initializeScan() {
-        Location center = loc;
-        minX = center.getBlockX() - range;
-        minY = Math.max(center.getBlockY() - yRadius, center.getWorld().getMinHeight());
-        minZ = center.getBlockZ() - range;
-        maxX = center.getBlockX() + range;
-        maxY = Math.min(center.getBlockY() + yRadius, center.getWorld().getMaxHeight());
-        maxZ = center.getBlockZ() + range;
-
-        scanX = minX;
-        scanY = minY;
-        scanZ = minZ;
-
-        containers = new ArrayList<>();
+        scanner = ContainerScanner.create(plugin, ScanBox.around(loc, range, yRadius));
         scanInitialized = true;
 
         // 计算预计tick数
-        long totalBlocks = (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
-        long estimatedTicks = (totalBlocks + BLOCKS_SCAN_PER_TICK - 1) / BLOCKS_SCAN_PER_TICK; // 向上取整
+        long estimatedTicks = (scanner.estimateWork() + BLOCKS_SCAN_PER_TICK - 1) / BLOCKS_SCAN_PER_TICK; // 向上取整
 
+        if (preview != null) {
+            return;
+        }
         plugin.sendMessage(player,
                 plugin.getMsgSearchContainers()
                         .replace("{estimated_ticks}", String.valueOf(estimatedTicks))
@@ -183,83 +442,84 @@ public class OrganizeTask extends BukkitRunnable {
     }
 
     /**
-     * 检查是否还有更多方块需要扫描
+     * 检查找到的容器是否可用：通过牌子锁检测，且大箱子只保留一半
      */
-    private boolean hasMoreBlocksToScan() {
-        return scanX <= maxX;
+    private boolean accept(OrganizeAlgorithm.ContainerInfo info) {
+        if (!canAccess(info)) {
+            return false;
+        }
+        if (info.getInventory() instanceof DoubleChestInventory) {
+            return seenDoubleChests.add(info.getInventory().getLocation());
+        }
+        return true;
     }
 
     /**
-     * 扫描当前方块
+     * 执行lockette pro牌子锁检测
      */
-    private void scanCurrentBlock() {
-        Block block = loc.getWorld().getBlockAt(scanX, scanY, scanZ);
-
-        // 检查是否为容器方块
-        if (OrganizeAlgorithm.isContainerBlock(block.getType())) {
-            BlockState state = block.getState();
-            if (state instanceof InventoryHolder) {
-                InventoryHolder holder = (InventoryHolder) state;
-                // 执行lockette pro牌子锁检测
-                if (plugin.isLocketteProEnabled()) {
-                    if (!plugin.getLocketteProHook().canAccess(player, block)) {
-                        return;
-                    }
-                }
-                containers.add(new OrganizeAlgorithm.ContainerInfo(block.getLocation(), holder.getInventory()));
-            }
+    private boolean canAccess(OrganizeAlgorithm.ContainerInfo info) {
+        if (!plugin.isLocketteProEnabled()) {
+            return true;
         }
+        return plugin.getLocketteProHook().canAccess(player, info.getLocation().getBlock());
     }
 
     /**
-     * 移动到下一个方块
+     * 第二阶段：在时间片内分批为物品制定放置计划，时间片用完时记录游标，下一tick从中断处继续
      */
-    private void moveToNextBlock() {
-        scanZ++;
-        if (scanZ > maxZ) {
-            scanZ = minZ;
-            scanY++;
-            if (scanY > maxY) {
-                scanY = minY;
-                scanX++;
+    private void organizeItemsPhase(long deadlineNanos) {
+        // 扫描结束后才读取容器内容并建立索引和槽位摘要，同样按时间片分批
+        if (index == null) {
+            // 按访问顺序加入索引，每种物品的候选容器列表也按此顺序排列
+            containerOrder.sort(containers, loc);
+            index = new ContainerIndex(keys);
+            lastProgressMillis = System.currentTimeMillis();
+        }
+        while (indexCursor < containers.size()) {
+            index.add(containers.get(indexCursor++));
+            if (System.nanoTime() >= deadlineNanos) {
+                return;
             }
         }
-    }
-
-    /**
-     * 第二阶段：处理物品整理
-     */
-    private void organizeItemsPhase() {
-        // int processedItems = 0;
-
-        // 处理当前批次的物品
-        while (currentItemIndex < itemsToOrganize.size()) {
-            ItemStack currentItem = itemsToOrganize.get(currentItemIndex);
-
-            if (currentItem != null && currentItem.getType() != Material.AIR) {
-                // 使用新的方法尝试放置物品并获取结果信息
-                OrganizeAlgorithm.PlacementResult result = OrganizeAlgorithm.tryPlaceItemWithVisualEffect(
-                        currentItem, containers, loc, player, plugin);
-
-                // 如果成功放入了物品，创建视觉效果
-                if (result.hasPlacedItem()) {
-                    ItemFlyingEffect.createAndStart(plugin, result.getPlacedItem(), loc, result.getTargetLocation());
-                }
+        containers.clear();
+
+        // 按物品组逐个目标容器放置，每放入一个容器检查一次时间片
+        OrganizeAlgorithm.Strategy strategy = plugin.getPlacementStrategy();
+        List<OrganizeAlgorithm.PlacementResult> placements = new ArrayList<>();
+        while (currentGroupIndex < itemGroups.size()) {
+            ItemGroup group = itemGroups.get(currentGroupIndex);
+            if (currentGroupLeft < 0) {
+                currentGroupLeft = group.getAmount();
+                currentTargets = OrganizeAlgorithm.getCandidates(index, group.getKeyId(), strategy);
+            }
 
-                // 如果有剩余物品，添加到剩余列表
-                if (result.getRemainingItem() != null && result.getRemainingItem().getAmount() > 0) {
-                    remainingItems.add(result.getRemainingItem());
+            if (currentGroupLeft > 0 && currentStep < OrganizeAlgorithm.getPlanSteps(currentTargets, strategy)) {
+                currentGroupLeft -= OrganizeAlgorithm.planStep(currentTargets, currentStep++, group.getKeyId(),
+                        currentGroupLeft, keys, strategy, placements);
+            } else {
+                // 当前组已放完或已没有可用容器，剩余的添加到剩余列表
+                if (currentGroupLeft > 0) {
+                    remainingGroups.add(new ItemGroup(group.getKeyId(), currentGroupLeft));
                 }
+                currentGroupIndex++;
+                currentStep = 0;
+                currentTargets = null;
+                currentGroupLeft = -1;
             }
 
-            currentItemIndex++;
-            // processedItems++;
+            if (System.nanoTime() >= deadlineNanos) {
+                break;
+            }
         }
-
-        // 更新进度
-        final int finalCurrentIndex = currentItemIndex;
-        final int totalItems = itemsToOrganize.size();
-        if (player.isOnline()) {
+        playEffects(placements);
+
+        // 更新进度：计划完成时发送一次，跨多个tick时每秒最多发送一次
+        final int finalCurrentIndex = currentGroupIndex;
+        final int totalItems = itemGroups.size();
+        long now = System.currentTimeMillis();
+        if (player.isOnline() && preview == null
+                && (finalCurrentIndex >= totalItems || now - lastProgressMillis >= 1000)) {
+            lastProgressMillis = now;
             int progress = (finalCurrentIndex * 100) / totalItems;
             plugin.sendMessage(player, plugin.getMsgOrganizingProgress(),
                     "progress", String.valueOf(progress),
@@ -267,20 +527,59 @@ public class OrganizeTask extends BukkitRunnable {
                     "total", String.valueOf(totalItems));
         }
 
-        // 如果所有物品都处理完了，进入完成阶段
-        if (currentItemIndex >= itemsToOrganize.size()) {
+        // 如果所有物品都计划完了，进入写入阶段（预览模式跳过写入）
+        if (currentGroupIndex >= itemGroups.size()) {
+            if (preview != null) {
+                currentPhase = TaskPhase.FINISH;
+                finishOrganizing();
+            } else {
+                currentPhase = TaskPhase.APPLY_PLAN;
+            }
+        }
+    }
+
+    /**
+     * 第三阶段：逐个容器一次性写入放置计划（每个容器一次 setStorageContents），同样按时间片分批
+     */
+    private void applyPlanPhase(long deadlineNanos) {
+        List<OrganizeAlgorithm.ContainerInfo> planned = index.getAll();
+        while (applyCursor < planned.size()) {
+            OrganizeAlgorithm.applyPlan(planned.get(applyCursor++), keys, player, plugin, remainingGroups, undo);
+            if (System.nanoTime() >= deadlineNanos) {
+                break;
+            }
+        }
+
+        if (applyCursor >= planned.size()) {
             currentPhase = TaskPhase.FINISH;
             finishOrganizing();
         }
     }
 
     /**
-     * 第三阶段：完成整理
+     * 第四阶段：完成整理
      */
     private void finishOrganizing() {
+        // 预览模式由 tick 在统计完本次耗时后发送报告
+        if (preview != null) {
+            previewComplete = true;
+            finished = true;
+            return;
+        }
+
+        // 保存撤销记录，并在空闲时整理工作站的存储（撤销记录包含的容器等记录离开历史后再整理）
+        if (undo != null && !undo.isEmpty()) {
+            plugin.getUndoHistory().push(player, undo);
+        }
+        if (plugin.getContainerCompactor() != null) {
+            plugin.getContainerCompactor().enqueueStation(loc, range, player);
+        }
 
-        int organizedCount = itemsToOrganize.size() - remainingItems.size();
-        int remainingCount = remainingItems.size();
+        int remainingCount = 0;
+        for (ItemGroup group : remainingGroups) {
+            remainingCount += group.getAmount();
+        }
+        int organizedCount = totalAmount - remainingCount;
         if (player.isOnline()) {
             plugin.sendMessage(player, plugin.getMsgOrganizeComplete());
         }
@@ -289,21 +588,17 @@ public class OrganizeTask extends BukkitRunnable {
                 plugin.sendMessage(player, plugin.getMsgItemsOrganized(), "count", String.valueOf(organizedCount));
                 plugin.sendMessage(player, plugin.getMsgItemsRemaining(), "count", String.valueOf(remainingCount));
                 // 返回剩余物品给玩家
-                OrganizeAlgorithm.returnItemsToPlayer(player, remainingItems, plugin);
+                OrganizeAlgorithm.returnItemsToPlayer(player, keys, remainingGroups, plugin);
             } else {
                 plugin.getLogger().info("玩家 " + player.getName() + " 在整理过程中离线，剩余物品将掉落在原地");
-                for (ItemStack item : remainingItems) {
-                    if (item != null && item.getType() != Material.AIR) {
-                        player.getWorld().dropItemNaturally(player.getLocation(), item);
-                    }
-                }
+                dropItems(remainingGroups);
             }
 
         } else {
             plugin.sendMessage(player, plugin.getMsgAllItemsOrganized());
         }
 
-        // 取消任务
-        this.cancel();
+        // 结束任务
+        finished = true;
     }
 }
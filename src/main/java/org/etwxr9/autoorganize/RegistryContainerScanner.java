@@ -0,0 +1,66 @@
+package org.etwxr9.autoorganize;
+
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.inventory.InventoryHolder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 索引扫描器 - 从 {@link ContainerRegistry} 中直接查询范围内的容器位置
+ * 每个区块只需查询一次索引，工作量为 1 + 该区块内命中的容器数
+ */
+public class RegistryContainerScanner implements ContainerScanner {
+
+    private final ContainerRegistry registry;
+    private final ScanBox box;
+    private final ChunkCursor cursor;
+
+    public RegistryContainerScanner(ContainerRegistry registry, ScanBox box) {
+        this.registry = registry;
+        this.box = box;
+        this.cursor = new ChunkCursor(box);
+    }
+
+    @Override
+    public int scan(int budget, List<OrganizeAlgorithm.ContainerInfo> found) {
+        int used = 0;
+        List<Block> blocks = new ArrayList<>();
+        while (used < budget && !isDone()) {
+            blocks.clear();
+            registry.collect(box.getWorld().getChunkAt(cursor.getX(), cursor.getZ()), box, blocks);
+            for (Block block : blocks) {
+                bind(block, found);
+            }
+            used += 1 + blocks.size();
+            cursor.advance();
+        }
+        return used;
+    }
+
+    @Override
+    public boolean isDone() {
+        return cursor.isDone();
+    }
+
+    @Override
+    public long estimateWork() {
+        return box.getChunkCount();
+    }
+
+    /**
+     * 将索引中的位置绑定为容器，位置已不是容器时顺便修正索引
+     */
+    private void bind(Block block, List<OrganizeAlgorithm.ContainerInfo> found) {
+        if (!OrganizeAlgorithm.isContainerBlock(block.getType())) {
+            registry.remove(block);
+            return;
+        }
+        BlockState state = block.getState(false);
+        if (state instanceof InventoryHolder) {
+            InventoryHolder holder = (InventoryHolder) state;
+            found.add(new OrganizeAlgorithm.ContainerInfo(block.getLocation(), holder.getInventory()));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.etwxr9.autoorganize;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+
+/**
+ * 扫描范围类 - 以方块坐标表示的长方体范围（包含边界）
+ */
+public class ScanBox {
+
+    private final World world;
+    private final int minX, minY, minZ, maxX, maxY, maxZ;
+
+    public ScanBox(World world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        this.world = world;
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+    }
+
+    /**
+     * 以中心点创建扫描范围，Y轴会被限制在世界高度之内
+     *
+     * @param center  中心位置
+     * @param range   水平半径
+     * @param yRadius 垂直半径
+     */
+    public static ScanBox around(Location center, int range, int yRadius) {
+        World world = center.getWorld();
+        return new ScanBox(world,
+                center.getBlockX() - range,
+                Math.max(center.getBlockY() - yRadius, world.getMinHeight()),
+                center.getBlockZ() - range,
+                center.getBlockX() + range,
+                Math.min(center.getBlockY() + yRadius, world.getMaxHeight() - 1),
+                center.getBlockZ() + range);
+    }
+
+    /**
+     * 检查坐标是否在范围内
+     */
+    public boolean contains(int x, int y, int z) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+    }
+
+    /**
+     * 范围内的方块总数
+     */
+    public long getVolume() {
+        return (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+    }
+
+    /**
+     * 范围覆盖的区块总数
+     */
+    public int getChunkCount() {
+        return (getMaxChunkX() - getMinChunkX() + 1) * (getMaxChunkZ() - getMinChunkZ() + 1);
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    public int getMinX() {
+        return minX;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getMinZ() {
+        return minZ;
+    }
+
+    public int getMaxX() {
+        return maxX;
+    }
+
+    public int getMaxY() {
+        return maxY;
+    }
+
+    public int getMaxZ() {
+        return maxZ;
+    }
+
+    public int getCenterX() {
+        return (minX + maxX) >> 1;
+    }
+
+    public int getCenterZ() {
+        return (minZ + maxZ) >> 1;
+    }
+
+    public int getMinChunkX() {
+        return minX >> 4;
+    }
+
+    public int getMinChunkZ() {
+        return minZ >> 4;
+    }
+
+    public int getMaxChunkX() {
+        return maxX >> 4;
+    }
+
+    public int getMaxChunkZ() {
+        return maxZ >> 4;
+    }
+}
@@ -0,0 +1,209 @@
+package org.etwxr9.autoorganize;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 容器槽位摘要 - 记录每个槽位的物品编号和数量，以及空槽位和各物品未堆满槽位的位图
+ * 放置物品时直接跳到目标槽位，并随放置同步更新，同一次整理中后续物品无需重新扫描容器
+ * 放置只修改摘要（放置计划），之后由 {@link #apply} 一次性写入容器内容数组
+ */
+public class SlotSummary {
+
+    private static final int EMPTY = -1;
+
+    // 槽位 -> 物品编号（EMPTY表示空）
+    private final int[] slotKeys;
+    // 槽位 -> 数量
+    private final int[] amounts;
+    private final BitSet emptySlots = new BitSet();
+    // 物品编号 -> 该物品还有空间的槽位（即使全部堆满也保留条目，表示容器含有该物品）
+    private final Map<Integer, BitSet> partialSlots = new HashMap<>();
+    // 物品编号 -> 容器中该物品的总数量
+    private final Map<Integer, Integer> totals = new HashMap<>();
+
+    // 建立摘要（或上次写入）时容器的实际内容，写入前用来确认槽位没有被其他人改动
+    private int[] baseKeys;
+    private int[] baseAmounts;
+    // 计划中被修改、尚未写入容器的槽位
+    private final BitSet dirtySlots = new BitSet();
+
+    private SlotSummary(int size) {
+        this.slotKeys = new int[size];
+        this.amounts = new int[size];
+        Arrays.fill(slotKeys, EMPTY);
+    }
+
+    /**
+     * 根据容器内容建立摘要
+     *
+     * @param contents 容器的存储内容（getStorageContents）
+     * @param keys     本次整理共用的物品键表
+     */
+    public static SlotSummary of(ItemStack[] contents, ItemKeyTable keys) {
+        SlotSummary summary = new SlotSummary(contents.length);
+        for (int i = 0; i < contents.length; i++) {
+            ItemStack item = contents[i];
+            if (item == null || item.getType() == Material.AIR) {
+                summary.emptySlots.set(i);
+            } else {
+                summary.set(i, keys.idOf(item), item.getAmount(), item.getMaxStackSize());
+            }
+        }
+        summary.rebase();
+        return summary;
+    }
+
+    /**
+     * 容器中是否含有该物品
+     */
+    public boolean contains(int keyId) {
+        return partialSlots.containsKey(keyId);
+    }
+
+    /**
+     * 容器中含有的所有物品编号
+     */
+    public Set<Integer> getKeyIds() {
+        return partialSlots.keySet();
+    }
+
+    /**
+     * 容器中该物品的总数量
+     */
+    public int getTotal(int keyId) {
+        return totals.getOrDefault(keyId, 0);
+    }
+
+    /**
+     * 从指定槽位开始查找该物品下一个还有空间的槽位
+     *
+     * @return 槽位序号，没有时返回-1
+     */
+    public int nextPartialSlot(int keyId, int fromSlot) {
+        BitSet bits = partialSlots.get(keyId);
+        return bits != null ? bits.nextSetBit(fromSlot) : -1;
+    }
+
+    /**
+     * 从指定槽位开始查找下一个空槽位
+     *
+     * @return 槽位序号，没有时返回-1
+     */
+    public int nextEmptySlot(int fromSlot) {
+        return emptySlots.nextSetBit(fromSlot);
+    }
+
+    /**
+     * 槽位中物品的数量
+     */
+    public int getAmount(int slot) {
+        return amounts[slot];
+    }
+
+    /**
+     * 槽位中物品的编号，空槽位返回-1
+     */
+    public int getKeyId(int slot) {
+        return slotKeys[slot];
+    }
+
+    public int getSize() {
+        return slotKeys.length;
+    }
+
+    /**
+     * 记录槽位的新内容，同步更新空槽位和未堆满槽位位图
+     *
+     * @param slot         槽位
+     * @param keyId        物品编号
+     * @param amount       新数量
+     * @param maxStackSize 该物品的最大堆叠数
+     */
+    public void set(int slot, int keyId, int amount, int maxStackSize) {
+        if (slotKeys[slot] != EMPTY) {
+            totals.merge(slotKeys[slot], -amounts[slot], Integer::sum);
+        }
+        totals.merge(keyId, amount, Integer::sum);
+        slotKeys[slot] = keyId;
+        amounts[slot] = amount;
+        emptySlots.clear(slot);
+        BitSet bits = partialSlots.computeIfAbsent(keyId, k -> new BitSet());
+        bits.set(slot, amount < maxStackSize);
+        dirtySlots.set(slot);
+    }
+
+    /**
+     * 是否有尚未写入容器的计划
+     */
+    public boolean isDirty() {
+        return !dirtySlots.isEmpty();
+    }
+
+    /**
+     * 将计划写入容器内容数组（由 getStorageContents 获取，调用方之后一次性 setStorageContents）
+     * 槽位的实际内容与建立摘要时不同（期间被玩家或漏斗改动）时放弃该槽位，计划放入的数量加入 rejected
+     *
+     * @param contents 容器当前的存储内容，会被直接修改
+     * @param keys     本次整理共用的物品键表
+     * @param rejected 未能写入的物品组
+     * @param written  已写入数组的物品组（调用方最终没有写回容器时，应将其视为未能写入）
+     */
+    public void apply(ItemStack[] contents, ItemKeyTable keys, List<ItemGroup> rejected, List<ItemGroup> written) {
+        for (int slot = dirtySlots.nextSetBit(0); slot >= 0; slot = dirtySlots.nextSetBit(slot + 1)) {
+            int added = amounts[slot] - (baseKeys[slot] == EMPTY ? 0 : baseAmounts[slot]);
+            if (added <= 0) {
+                continue;
+            }
+            if (slot < contents.length && matchesBase(contents[slot], slot, keys)) {
+                ItemStack stack = keys.getPrototype(slotKeys[slot]).clone();
+                stack.setAmount(amounts[slot]);
+                contents[slot] = stack;
+                written.add(new ItemGroup(slotKeys[slot], added));
+            } else {
+                rejected.add(new ItemGroup(slotKeys[slot], added));
+            }
+        }
+        rebase();
+    }
+
+    /**
+     * 放弃尚未写入的计划（容器被破坏或记录失败时），计划放入的数量加入 rejected
+     */
+    public void discard(List<ItemGroup> rejected) {
+        for (int slot = dirtySlots.nextSetBit(0); slot >= 0; slot = dirtySlots.nextSetBit(slot + 1)) {
+            int added = amounts[slot] - (baseKeys[slot] == EMPTY ? 0 : baseAmounts[slot]);
+            if (added > 0) {
+                rejected.add(new ItemGroup(slotKeys[slot], added));
+            }
+        }
+        rebase();
+    }
+
+    /**
+     * 槽位的实际物品是否与基准一致
+     */
+    private boolean matchesBase(ItemStack item, int slot, ItemKeyTable keys) {
+        if (item == null || item.getType() == Material.AIR) {
+            return baseKeys[slot] == EMPTY;
+        }
+        return baseKeys[slot] != EMPTY && item.getAmount() == baseAmounts[slot] && keys.idOf(item) == baseKeys[slot];
+    }
+
+    /**
+     * 以摘要的当前内容作为新的基准，清空计划
+     * 被放弃的槽位不再回滚，之后该容器不应再用于放置
+     */
+    private void rebase() {
+        baseKeys = slotKeys.clone();
+        baseAmounts = amounts.clone();
+        dirtySlots.clear();
+    }
+}
@@ -0,0 +1,124 @@
+package org.etwxr9.autoorganize;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.inventory.InventoryHolder;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 区块快照扫描器 - 主线程只负责获取区块快照和最终绑定容器，逐方块搜索在线程池中完成
+ * 不依赖方块实体，空的区块段会被直接跳过
+ */
+public class SnapshotContainerScanner implements ContainerScanner {
+
+    private final ScanBox box;
+    private final ExecutorService executor;
+    private final int minSection;
+    private final ChunkCursor cursor;
+
+    // 工作线程找到的候选位置 {x, y, z}
+    private final Queue<int[]> results = new ConcurrentLinkedQueue<>();
+    // 已提交但尚未完成的区块数量
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public SnapshotContainerScanner(ScanBox box, ExecutorService executor) {
+        this.box = box;
+        this.executor = executor;
+        this.minSection = box.getWorld().getMinHeight() >> 4;
+        this.cursor = new ChunkCursor(box);
+    }
+
+    @Override
+    public int scan(int budget, List<OrganizeAlgorithm.ContainerInfo> found) {
+        int used = 0;
+
+        // 先绑定工作线程已经找到的位置
+        int[] pos;
+        while (used < budget && (pos = results.poll()) != null) {
+            bind(box.getWorld().getBlockAt(pos[0], pos[1], pos[2]), found);
+            used++;
+        }
+
+        // 再为剩余区块创建快照并提交搜索
+        while (used < budget && !allSubmitted()) {
+            ChunkSnapshot snapshot = box.getWorld().getChunkAt(cursor.getX(), cursor.getZ())
+                    .getChunkSnapshot(false, false, false);
+            pending.incrementAndGet();
+            executor.execute(() -> {
+                try {
+                    scanSnapshot(snapshot);
+                } finally {
+                    pending.decrementAndGet();
+                }
+            });
+            used++;
+            cursor.advance();
+        }
+        return used;
+    }
+
+    @Override
+    public boolean isDone() {
+        // 先检查pending：工作线程在递减之前已写入结果
+        return allSubmitted() && pending.get() == 0 && results.isEmpty();
+    }
+
+    @Override
+    public long estimateWork() {
+        return box.getChunkCount();
+    }
+
+    /**
+     * 在工作线程中搜索快照内位于范围中的容器方块
+     */
+    private void scanSnapshot(ChunkSnapshot snapshot) {
+        int baseX = snapshot.getX() << 4;
+        int baseZ = snapshot.getZ() << 4;
+        int fromX = Math.max(box.getMinX(), baseX) - baseX;
+        int toX = Math.min(box.getMaxX(), baseX + 15) - baseX;
+        int fromZ = Math.max(box.getMinZ(), baseZ) - baseZ;
+        int toZ = Math.min(box.getMaxZ(), baseZ + 15) - baseZ;
+
+        for (int sectionY = box.getMinY() >> 4; sectionY <= box.getMaxY() >> 4; sectionY++) {
+            // 调色板中只有空气的区块段直接跳过
+            if (snapshot.isSectionEmpty(sectionY - minSection)) {
+                continue;
+            }
+            int fromY = Math.max(box.getMinY(), sectionY << 4);
+            int toY = Math.min(box.getMaxY(), (sectionY << 4) + 15);
+            for (int y = fromY; y <= toY; y++) {
+                for (int z = fromZ; z <= toZ; z++) {
+                    for (int x = fromX; x <= toX; x++) {
+                        if (OrganizeAlgorithm.isContainerBlock(snapshot.getBlockType(x, y, z))) {
+                            results.add(new int[] { baseX + x, y, baseZ + z });
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 在主线程中将候选位置绑定为容器（快照之后方块可能已被改变，需重新确认）
+     */
+    private void bind(Block block, List<OrganizeAlgorithm.ContainerInfo> found) {
+        if (!OrganizeAlgorithm.isContainerBlock(block.getType())) {
+            return;
+        }
+        BlockState state = block.getState(false);
+        if (state instanceof InventoryHolder) {
+            InventoryHolder holder = (InventoryHolder) state;
+            found.add(new OrganizeAlgorithm.ContainerInfo(block.getLocation(), holder.getInventory()));
+        }
+    }
+
+    private boolean allSubmitted() {
+        return cursor.isDone();
+    }
+}
@@ -0,0 +1,69 @@
+package org.etwxr9.autoorganize;
+
+import org.bukkit.Chunk;
+import org.bukkit.block.BlockState;
+import org.bukkit.inventory.InventoryHolder;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 方块实体扫描器 - 每个与范围相交的区块只访问一次，只遍历区块内的方块实体
+ * 扫描开销与区块数和方块实体数成正比，而与范围体积无关
+ */
+public class TileEntityContainerScanner implements ContainerScanner {
+
+    private final ScanBox box;
+    private final ChunkCursor cursor;
+
+    // 当前区块中被检查的方块实体数量（在过滤器中累加）
+    private int examined;
+
+    public TileEntityContainerScanner(ScanBox box) {
+        this.box = box;
+        this.cursor = new ChunkCursor(box);
+    }
+
+    @Override
+    public int scan(int budget, List<OrganizeAlgorithm.ContainerInfo> found) {
+        int used = 0;
+        while (used < budget && !isDone()) {
+            used += scanChunk(box.getWorld().getChunkAt(cursor.getX(), cursor.getZ()), found);
+            cursor.advance();
+        }
+        return used;
+    }
+
+    @Override
+    public boolean isDone() {
+        return cursor.isDone();
+    }
+
+    @Override
+    public long estimateWork() {
+        return box.getChunkCount();
+    }
+
+    /**
+     * 扫描单个区块内位于范围中的容器方块实体
+     *
+     * @return 消耗的工作量（1 + 被检查的方块实体数）
+     */
+    private int scanChunk(Chunk chunk, List<OrganizeAlgorithm.ContainerInfo> found) {
+        examined = 0;
+        // 不创建快照，直接拿到实时的方块状态
+        Collection<BlockState> states = chunk.getTileEntities(block -> {
+            examined++;
+            return box.contains(block.getX(), block.getY(), block.getZ())
+                    && OrganizeAlgorithm.isContainerBlock(block.getType());
+        }, false);
+
+        for (BlockState state : states) {
+            if (state instanceof InventoryHolder) {
+                InventoryHolder holder = (InventoryHolder) state;
+                found.add(new OrganizeAlgorithm.ContainerInfo(state.getLocation(), holder.getInventory()));
+            }
+        }
+        return 1 + examined;
+    }
+}
@@ -0,0 +1,25 @@
+package org.etwxr9.autoorganize;
+
+/**
+ * 由 {@link OrganizeScheduler} 在每tick的时间片内推进的任务
+ */
+public interface TimeSlicedTask {
+
+    /**
+     * 在时间片内推进任务
+     *
+     * @param deadlineNanos 本次时间片的截止时间（System.nanoTime）
+     * @return 任务是否已结束
+     */
+    boolean tick(long deadlineNanos);
+
+    /**
+     * 任务是否已结束
+     */
+    boolean isFinished();
+
+    /**
+     * 中止任务（插件卸载时调用）
+     */
+    void abort();
+}
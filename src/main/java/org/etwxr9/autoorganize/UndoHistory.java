@@ -0,0 +1,142 @@
+package org.etwxr9.autoorganize;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 撤销历史 - 每个在线玩家最近几次整理的撤销记录（有上限的环形队列，满了丢弃最旧的）
+ * 碎片整理会改动槽位，使撤销时的校验失败，因此容器在所有包含它的撤销记录（包括其他玩家的记录和正在撤销的记录）
+ * 都离开历史（被挤出、被撤销或玩家下线）后才交给 {@link ContainerCompactor}
+ */
+public class UndoHistory implements Listener {
+
+    private final AutoOrganize plugin;
+    private final int capacity;
+    private final Map<UUID, Deque<UndoRecord>> histories = new HashMap<>();
+    // 世界UID -> 容器位置 -> 包含该容器的撤销记录数（记录从保存到释放期间计数）
+    private final Map<UUID, Map<Long, Integer>> covered = new HashMap<>();
+
+    public UndoHistory(AutoOrganize plugin, int capacity) {
+        this.plugin = plugin;
+        this.capacity = capacity;
+    }
+
+    /**
+     * 保存一次整理的撤销记录，超出上限时丢弃最旧的记录
+     */
+    public void push(Player player, UndoRecord record) {
+        if (record.isEmpty()) {
+            return;
+        }
+        record.trim();
+        Map<Long, Integer> positions = covered.computeIfAbsent(record.getWorldId(), k -> new HashMap<>());
+        for (int i = 0; i < record.getContainerCount(); i++) {
+            positions.merge(record.getPosition(i), 1, Integer::sum);
+        }
+        addLast(player, record);
+    }
+
+    /**
+     * 将取出后未能撤销的记录放回历史（记录仍在计数中）
+     */
+    public void restore(Player player, UndoRecord record) {
+        addLast(player, record);
+    }
+
+    private void addLast(Player player, UndoRecord record) {
+        Deque<UndoRecord> history = histories.computeIfAbsent(player.getUniqueId(), k -> new ArrayDeque<>(capacity));
+        if (history.size() >= capacity) {
+            release(player, history.pollFirst());
+        }
+        history.addLast(record);
+    }
+
+    /**
+     * 取出玩家最近一次整理的撤销记录，撤销结束后必须调用 {@link #release} 或 {@link #restore}
+     *
+     * @return 撤销记录，没有时返回null
+     */
+    public UndoRecord poll(Player player) {
+        Deque<UndoRecord> history = histories.get(player.getUniqueId());
+        if (history == null) {
+            return null;
+        }
+        UndoRecord record = history.pollLast();
+        if (history.isEmpty()) {
+            histories.remove(player.getUniqueId());
+        }
+        return record;
+    }
+
+    /**
+     * 撤销记录离开历史后，不再被其他记录包含的容器可以进行碎片整理
+     */
+    public void release(Player player, UndoRecord record) {
+        Map<Long, Integer> positions = covered.get(record.getWorldId());
+        if (positions == null) {
+            return;
+        }
+        World world = plugin.getServer().getWorld(record.getWorldId());
+        List<Location> freed = new ArrayList<>();
+        for (int i = 0; i < record.getContainerCount(); i++) {
+            long position = record.getPosition(i);
+            Integer count = positions.get(position);
+            if (count == null || count > 1) {
+                if (count != null) {
+                    positions.put(position, count - 1);
+                }
+                continue;
+            }
+            positions.remove(position);
+            if (world != null) {
+                freed.add(record.getLocation(world, i));
+            }
+        }
+        if (positions.isEmpty()) {
+            covered.remove(record.getWorldId());
+        }
+        if (!freed.isEmpty() && plugin.getContainerCompactor() != null) {
+            plugin.getContainerCompactor().enqueue(freed, player);
+        }
+    }
+
+    /**
+     * 容器是否仍被某个撤销记录包含（包含时不能进行碎片整理）
+     */
+    public boolean isCovered(Location location) {
+        Map<Long, Integer> positions = covered.get(location.getWorld().getUID());
+        return positions != null && positions.containsKey(
+                AuditJournal.packPosition(location.getBlockX(), location.getBlockY(), location.getBlockZ()));
+    }
+
+    /**
+     * 清空所有历史（插件卸载时调用）
+     */
+    public void clear() {
+        histories.clear();
+        covered.clear();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        Deque<UndoRecord> history = histories.remove(event.getPlayer().getUniqueId());
+        if (history != null) {
+            for (UndoRecord record : history) {
+                release(event.getPlayer(), record);
+            }
+        }
+    }
+}
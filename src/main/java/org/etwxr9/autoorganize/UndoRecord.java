@@ -0,0 +1,169 @@
+package org.etwxr9.autoorganize;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 一次整理的撤销记录 - 只记录被写入的槽位：容器、槽位、物品、写入前后的数量
+ * 每个槽位3个int（容器序号和槽位打包、物品序号、前后数量打包），每个容器一个打包坐标，
+ * 物品原型每种只保存一份；记录结束后调用 {@link #trim} 释放建立记录时使用的查找表
+ */
+public class UndoRecord {
+
+    private static final int ENTRY_INTS = 3;
+    // 容器的存储槽位不超过256个（大箱子54个）
+    private static final int MAX_SLOT = 0xFF;
+
+    private final UUID worldId;
+
+    // 容器序号 -> 打包坐标（见 AuditJournal.packPosition）
+    private long[] positions = new long[8];
+    private int positionCount = 0;
+    // 每个槽位：容器序号 << 8 | 槽位，物品序号，写入前数量 << 16 | 写入后数量
+    private int[] entries = new int[ENTRY_INTS * 16];
+    private int entryCount = 0;
+    // 物品序号 -> 原型
+    private final List<ItemStack> prototypes = new ArrayList<>();
+
+    // 只在记录期间使用：容器位置 -> 容器序号，本次整理的物品编号 -> 物品序号
+    private Map<Location, Integer> containerIds = new HashMap<>();
+    private Map<Integer, Integer> itemIds = new HashMap<>();
+
+    public UndoRecord(World world) {
+        this.worldId = world.getUID();
+    }
+
+    /**
+     * 记录一个被写入的槽位
+     *
+     * @param location 容器位置
+     * @param slot     槽位
+     * @param keyId    物品编号（本次整理的键表）
+     * @param keys     本次整理共用的物品键表
+     * @param before   写入前的数量（空槽位为0）
+     * @param after    写入后的数量
+     */
+    public void record(Location location, int slot, int keyId, ItemKeyTable keys, int before, int after) {
+        if (slot > MAX_SLOT) {
+            return;
+        }
+        Integer container = containerIds.get(location);
+        if (container == null) {
+            container = positionCount;
+            containerIds.put(location, container);
+            if (positionCount == positions.length) {
+                positions = Arrays.copyOf(positions, positionCount * 2);
+            }
+            positions[positionCount++] = AuditJournal.packPosition(location.getBlockX(), location.getBlockY(),
+                    location.getBlockZ());
+        }
+        Integer item = itemIds.get(keyId);
+        if (item == null) {
+            item = prototypes.size();
+            itemIds.put(keyId, item);
+            prototypes.add(keys.getPrototype(keyId));
+        }
+
+        if ((entryCount + 1) * ENTRY_INTS > entries.length) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+        }
+        int offset = entryCount++ * ENTRY_INTS;
+        entries[offset] = container << 8 | slot;
+        entries[offset + 1] = item;
+        entries[offset + 2] = before << 16 | after;
+    }
+
+    /**
+     * 记录结束：数组收缩到实际大小，释放查找表
+     */
+    public void trim() {
+        positions = Arrays.copyOf(positions, positionCount);
+        entries = Arrays.copyOf(entries, entryCount * ENTRY_INTS);
+        containerIds = null;
+        itemIds = null;
+    }
+
+    public boolean isEmpty() {
+        return entryCount == 0;
+    }
+
+    public UUID getWorldId() {
+        return worldId;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * 记录的所有容器位置
+     */
+    public List<Location> getLocations(World world) {
+        List<Location> locations = new ArrayList<>(positionCount);
+        for (int i = 0; i < positionCount; i++) {
+            locations.add(getLocation(world, i));
+        }
+        return locations;
+    }
+
+    /**
+     * 槽位所在容器的序号；同一容器的槽位在记录中是连续的
+     */
+    public int getContainer(int entry) {
+        return entries[entry * ENTRY_INTS] >>> 8;
+    }
+
+    /**
+     * 记录的容器数量
+     */
+    public int getContainerCount() {
+        return positionCount;
+    }
+
+    /**
+     * 容器位置（见 {@link AuditJournal#packPosition(int, int, int)}）
+     */
+    public long getPosition(int container) {
+        return positions[container];
+    }
+
+    public Location getLocation(World world, int container) {
+        long pos = positions[container];
+        return new Location(world, AuditJournal.unpackX(pos), AuditJournal.unpackY(pos), AuditJournal.unpackZ(pos));
+    }
+
+    public int getSlot(int entry) {
+        return entries[entry * ENTRY_INTS] & MAX_SLOT;
+    }
+
+    /**
+     * 槽位对应的物品序号（从0开始连续分配）
+     */
+    public int getItem(int entry) {
+        return entries[entry * ENTRY_INTS + 1];
+    }
+
+    public int getItemCount() {
+        return prototypes.size();
+    }
+
+    public ItemStack getItemPrototype(int item) {
+        return prototypes.get(item);
+    }
+
+    public int getBefore(int entry) {
+        return entries[entry * ENTRY_INTS + 2] >>> 16;
+    }
+
+    public int getAfter(int entry) {
+        return entries[entry * ENTRY_INTS + 2] & 0xFFFF;
+    }
+}
@@ -0,0 +1,172 @@
+package org.etwxr9.autoorganize;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 撤销任务 - 按撤销记录把上次整理放入的物品从容器取回给玩家
+ * 与整理任务一样由 {@link OrganizeScheduler} 在每tick的时间片内推进，每个容器一次性写入；
+ * 只取回仍然保持原样的槽位（相同物品且数量不少于放入后的数量），被改动过的槽位跳过
+ */
+public class UndoTask implements TimeSlicedTask {
+
+    private final AutoOrganize plugin;
+    private final Player player;
+    private final UndoRecord record;
+    private final World world;
+    // 撤销记录中的物品，编号与记录中的物品序号一致
+    private final ItemKeyTable keys = new ItemKeyTable();
+
+    // 下一个要处理的槽位记录
+    private int cursor = 0;
+    private int returnedCount = 0;
+    private int skippedSlots = 0;
+    private boolean finished = false;
+
+    public UndoTask(AutoOrganize plugin, Player player, UndoRecord record) {
+        this.plugin = plugin;
+        this.player = player;
+        this.record = record;
+        this.world = plugin.getServer().getWorld(record.getWorldId());
+        for (int item = 0; item < record.getItemCount(); item++) {
+            keys.idOf(record.getItemPrototype(item));
+        }
+    }
+
+    @Override
+    public boolean tick(long deadlineNanos) {
+        // 尚未取回的物品仍在容器中，玩家离线或世界被卸载时直接结束
+        if (!player.isOnline() || world == null) {
+            handBack();
+            finished = true;
+            return true;
+        }
+        try {
+            while (cursor < record.getEntryCount()) {
+                undoContainer();
+                if (System.nanoTime() >= deadlineNanos) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            plugin.getLogger().severe("撤销任务执行出错: " + e.getMessage());
+            e.printStackTrace();
+            plugin.sendMessage(player, plugin.getMsgErrorOccurred());
+            handBack();
+            finished = true;
+            return true;
+        }
+
+        if (cursor < record.getEntryCount()) {
+            return false;
+        }
+        player.sendMessage("§a已撤销上次整理，取回 §e" + returnedCount + " §a个物品");
+        if (skippedSlots > 0) {
+            player.sendMessage("§e有 " + skippedSlots + " 个槽位在整理后被改动过，未撤销");
+        }
+        plugin.getUndoHistory().release(player, record);
+        finished = true;
+        return true;
+    }
+
+    @Override
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public void abort() {
+        // 尚未取回的物品仍在容器中，只需交还撤销记录
+        handBack();
+        finished = true;
+    }
+
+    /**
+     * 撤销未完成时交还已从历史中取出的记录：尚未开始且玩家在线时放回历史，可以再次撤销；
+     * 否则释放记录，其容器交给碎片整理
+     */
+    private void handBack() {
+        if (cursor == 0 && player.isOnline() && world != null) {
+            plugin.getUndoHistory().restore(player, record);
+        } else {
+            plugin.getUndoHistory().release(player, record);
+        }
+    }
+
+    /**
+     * 撤销一个容器中的所有槽位，有变化时一次性写回，取回的物品交给玩家
+     */
+    private void undoContainer() {
+        int container = record.getContainer(cursor);
+        int start = cursor;
+        while (cursor < record.getEntryCount() && record.getContainer(cursor) == container) {
+            cursor++;
+        }
+
+        // 不为撤销加载区块
+        Location location = record.getLocation(world, container);
+        if (!location.isChunkLoaded()) {
+            skippedSlots += cursor - start;
+            return;
+        }
+        Block block = location.getBlock();
+        BlockState state = block.getState(false);
+        if (!(state instanceof InventoryHolder)
+                || (plugin.isLocketteProEnabled() && !plugin.getLocketteProHook().canAccess(player, block))) {
+            skippedSlots += cursor - start;
+            return;
+        }
+
+        Inventory inventory = ((InventoryHolder) state).getInventory();
+        ItemStack[] contents = inventory.getStorageContents();
+        List<ItemGroup> taken = new ArrayList<>();
+        for (int entry = start; entry < cursor; entry++) {
+            int slot = record.getSlot(entry);
+            int item = record.getItem(entry);
+            int placed = record.getAfter(entry) - record.getBefore(entry);
+            ItemStack current = slot < contents.length ? contents[slot] : null;
+            if (current == null || current.getAmount() < record.getAfter(entry)
+                    || !current.isSimilar(keys.getPrototype(item))) {
+                skippedSlots++;
+                continue;
+            }
+            if (current.getAmount() == placed) {
+                contents[slot] = null;
+            } else {
+                ItemStack stack = current.clone();
+                stack.setAmount(current.getAmount() - placed);
+                contents[slot] = stack;
+            }
+            taken.add(new ItemGroup(item, placed));
+        }
+        if (taken.isEmpty()) {
+            return;
+        }
+
+        AuditLogger audit = plugin.getAuditLogger();
+        if (audit != null && !audit.beforeWrite(inventory, player.getName())) {
+            skippedSlots += taken.size();
+            return;
+        }
+        inventory.setStorageContents(contents);
+
+        List<ItemGroup> changes = new ArrayList<>();
+        for (ItemGroup group : taken) {
+            changes.add(new ItemGroup(group.getKeyId(), -group.getAmount()));
+            returnedCount += group.getAmount();
+        }
+        if (audit != null) {
+            audit.afterWrite(location, player.getUniqueId(), keys, changes);
+        }
+        OrganizeAlgorithm.returnItemsToPlayer(player, keys, taken, plugin);
+    }
+}